@@ -1,10 +1,20 @@
 #!/bin/sh
+#
+# jatran.sh [options]            translate in a JVM of its own
+# jatran.sh --serve              stay resident, serving clients
+# jatran.sh client [options]     have the resident jatran translate
+# jatran.sh client --stop        stop the resident jatran
 
 BASE=`dirname $0`
 LIB_DIR="$BASE/lib"
 DIST_DIR="$BASE/dist"
 CP=".:$DIST_DIR/jatran.jar"
 
+if [ "$1" = "client" ]; then
+	shift
+	exec java -cp "$DIST_DIR/jatran.jar" jatran.main.Client "$@"
+fi
+
 for i in `ls $LIB_DIR/*.jar`;
 do
 	CP="$CP:$i"
@@ -0,0 +1,114 @@
+package jatran.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jatran.lexing.CharArrayInputBuffer;
+
+/**
+ * Corpus: the sources a benchmark runs over, one size bucket at a time.
+ *
+ * The "stub" bucket is every java file in src/stub/jatran/stub, the small
+ * hand written sources the tests translate. The other buckets hold a single
+ * synthetic compilation unit of roughly the named size, built by repeating a
+ * class body that exercises the constructs the printer rewrites (statics,
+ * constructors, loops, try/catch, generics, anonymous classes), so results
+ * can be compared across file sizes.
+ */
+public final class Corpus {
+	public static final String STUB = "stub";
+
+	/**
+	 * Where the stubs are looked up; benchmarks are run from the project root.
+	 */
+	public static final String STUB_DIR = System.getProperty("jatran.bench.stubs", "src/stub/jatran/stub");
+
+	private Corpus() {
+	}
+
+	/**
+	 * @returns the decoded text of every source in the bucket
+	 * @param bucket "stub", or a size such as "16k" or "1m"
+	 */
+	public static List<char[]> load(final String bucket) throws IOException {
+		List<char[]> sources = new ArrayList<char[]>();
+
+		if (STUB.equals(bucket)) {
+			File[] files = new File(STUB_DIR).listFiles();
+			if (files == null)
+				throw new IOException(STUB_DIR + " not found; run the benchmarks from the project root");
+
+			Arrays.sort(files);
+			for (File f : files) {
+				if (f.getName().endsWith(".java")) {
+					CharBuffer text = Charset.forName("UTF-8").decode(CharArrayInputBuffer.load(f));
+					char[] chars = new char[text.remaining()];
+					text.get(chars);
+					sources.add(chars);
+				}
+			}
+		} else {
+			sources.add(synthetic(size(bucket)).toCharArray());
+		}
+		return sources;
+	}
+
+	/**
+	 * @returns a compilation unit of at least size chars
+	 */
+	public static String synthetic(final int size) {
+		StringBuilder sb = new StringBuilder(size + 1024);
+		sb.append("package jatran.bench.synthetic;\n\n");
+		sb.append("import java.util.ArrayList;\nimport java.util.List;\n\n");
+		sb.append("public class Synthetic {\n");
+
+		for (int i = 0; sb.length() < size; ++i) {
+			sb.append("\tpublic static final String NAME_").append(i).append(" = \"member ").append(i).append("\";\n");
+			sb.append("\tprivate int count").append(i).append(";\n\n");
+			sb.append("\tpublic int sum").append(i).append("(List<Integer> xs) {\n");
+			sb.append("\t\tint total = 0;\n");
+			sb.append("\t\tfor (int j = 0; j < xs.size(); ++j) {\n");
+			sb.append("\t\t\tif (xs.get(j) > ").append(i).append(" && j % 2 == 0)\n");
+			sb.append("\t\t\t\ttotal += xs.get(j) * 2;\n");
+			sb.append("\t\t\telse\n\t\t\t\ttotal -= 1;\n");
+			sb.append("\t\t}\n\t\treturn total;\n\t}\n\n");
+			sb.append("\tpublic List<String> names").append(i).append("(String[] args) throws Exception {\n");
+			sb.append("\t\tList<String> names = new ArrayList<String>();\n");
+			sb.append("\t\ttry {\n");
+			sb.append("\t\t\tfor (String a : args)\n\t\t\t\tnames.add(a + NAME_").append(i).append(");\n");
+			sb.append("\t\t} catch (RuntimeException e) {\n");
+			sb.append("\t\t\tcount").append(i).append("++;\n");
+			sb.append("\t\t} finally {\n");
+			sb.append("\t\t\tnames.add(String.class.getName());\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\tRunnable r = new Runnable() {\n");
+			sb.append("\t\t\tpublic void run() { System.out.println(\"ran ").append(i).append("\"); }\n");
+			sb.append("\t\t};\n\t\tr.run();\n");
+			sb.append("\t\treturn names;\n\t}\n\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @returns the number of chars a bucket name such as "16k" or "1m" stands for
+	 */
+	static int size(final String bucket) {
+		String s = bucket.toLowerCase();
+		int unit = 1;
+
+		if (s.endsWith("k"))
+			unit = 1024;
+		else if (s.endsWith("m"))
+			unit = 1024 * 1024;
+
+		if (unit != 1)
+			s = s.substring(0, s.length() - 1);
+		return Integer.parseInt(s) * unit;
+	}
+}
@@ -0,0 +1,71 @@
+package jatran.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.incava.util.diff.Diff;
+import org.incava.util.diff.Difference;
+import org.incava.util.diff.MyersDiff;
+
+/**
+ * DiffBenchmark: Diff.diff() over the lines of each source against a copy
+ * with every tenth line edited, the way the tests compare translations with
+ * their stubs. Both the Hunt-Szymanski Diff and MyersDiff are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+	@Param({Corpus.STUB, "16k", "256k", "1m"})
+	public String bucket;
+
+	@Param({"hunt-szymanski", "myers"})
+	public String algorithm;
+
+	private String[][] from;
+	private String[][] to;
+
+	@Setup
+	public void prepare() throws IOException {
+		List<char[]> sources = Corpus.load(bucket);
+		from = new String[sources.size()][];
+		to = new String[sources.size()][];
+
+		for (int i = 0; i < sources.size(); ++i) {
+			from[i] = new String(sources.get(i)).split("\n");
+			to[i] = from[i].clone();
+			for (int j = 0; j < to[i].length; j += 10)
+				to[i][j] = to[i][j] + " // edited";
+		}
+	}
+
+	@Benchmark
+	public int diff() {
+		int edits = 0;
+
+		for (int i = 0; i < from.length; ++i) {
+			Diff diff = "myers".equals(algorithm)
+					? new MyersDiff(from[i], to[i])
+					: new Diff(from[i], to[i]);
+			List<Difference> ds = diff.diff();
+			edits += ds.size();
+		}
+		return edits;
+	}
+}
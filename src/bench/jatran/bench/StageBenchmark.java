@@ -0,0 +1,163 @@
+package jatran.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import antlr.RecognitionException;
+import antlr.Token;
+import antlr.TokenStreamException;
+import antlr.collections.AST;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import jatran.core.ScalaPrinter;
+import jatran.core.SourcePrinter;
+import jatran.lexing.CharArrayInputBuffer;
+import jatran.lexing.CompactASTFactory;
+import jatran.lexing.JavaLexer;
+import jatran.lexing.JavaRecognizer;
+import jatran.lexing.SourceParser;
+
+/**
+ * StageBenchmark: the lex, parse and print stages of a translation, each on
+ * its own, and the three of them end to end.
+ *
+ * One operation runs a stage over every source of the bucket. Each stage's
+ * input is prepared once per trial by running the stages before it, so lex
+ * starts from decoded chars, parse from a recorded token stream and print
+ * from a parsed tree. translate goes through a SourceParser, the way
+ * jatran does. Throughput gives ops/s, sample time gives the latency
+ * distribution including p99; run with -prof gc for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+	@Param({Corpus.STUB, "16k", "256k", "1m"})
+	public String bucket;
+
+	/**
+	 * What parse builds, and print walks: CommonAST nodes or a CompactASTFactory's arrays.
+	 */
+	@Param({"common", "compact"})
+	public String tree;
+
+	private List<char[]> sources;
+	private Token[][] tokens;
+	private AST[] trees;
+	private final SourceParser compactParser = new SourceParser(true);
+	private final SourceParser commonParser = new SourceParser(false);
+
+	@Setup
+	public void prepare() throws IOException, RecognitionException, TokenStreamException {
+		sources = Corpus.load(bucket);
+		tokens = new Token[sources.size()][];
+		trees = new AST[sources.size()];
+
+		for (int i = 0; i < sources.size(); ++i) {
+			tokens[i] = TokenReplay.record(sources.get(i));
+			trees[i] = parse(new TokenReplay(tokens[i]), compact());
+		}
+	}
+
+	@Benchmark
+	public void lex(final Blackhole bh) throws TokenStreamException {
+		for (char[] source : sources) {
+			JavaLexer lexer = new JavaLexer(new CharArrayInputBuffer(source, source.length));
+			Token t;
+			do {
+				t = lexer.nextToken();
+				bh.consume(t);
+			} while (t.getType() != Token.EOF_TYPE);
+		}
+	}
+
+	@Benchmark
+	public void parse(final Blackhole bh) throws RecognitionException, TokenStreamException {
+		for (Token[] ts : tokens)
+			bh.consume(parse(new TokenReplay(ts), compact()));
+	}
+
+	/**
+	 * Printing renames constructors to "this" in place, which a second print
+	 * does again to the same effect, so the trees are safe to print repeatedly.
+	 */
+	@Benchmark
+	public void print(final Blackhole bh) throws IOException {
+		for (AST tree : trees) {
+			CountingWriter out = new CountingWriter();
+			new ScalaPrinter().print(tree, out, false);
+			bh.consume(out.count);
+		}
+	}
+
+	@Benchmark
+	public void translate(final Blackhole bh) throws RecognitionException, TokenStreamException, IOException {
+		for (char[] source : sources) {
+			SourceParser parser = compact() ? compactParser : commonParser;
+			AST tree = parser.astFactory().create(SourcePrinter.ROOT_ID, "AST ROOT");
+			tree.setFirstChild(parser.parse(new CharArrayInputBuffer(source, source.length), "source", false));
+			CountingWriter out = new CountingWriter();
+			new ScalaPrinter().print(tree, out, false);
+			bh.consume(out.count);
+		}
+	}
+
+	private boolean compact() {
+		return "compact".equals(tree);
+	}
+
+	/**
+	 * @returns the compilation unit under a ROOT_ID node, the way jatran prints it
+	 */
+	private static AST parse(final antlr.TokenStream in, final boolean compact)
+			throws RecognitionException, TokenStreamException {
+		JavaRecognizer parser = new JavaRecognizer(in);
+		if (compact)
+			parser.setASTFactory(new CompactASTFactory());
+		parser.compilationUnit();
+		if (compact)
+			((CompactASTFactory) parser.getASTFactory()).forgetViews();
+
+		AST root = parser.getASTFactory().create(SourcePrinter.ROOT_ID, "AST ROOT");
+		root.setFirstChild(parser.getAST());
+		return root;
+	}
+
+	/**
+	 * Throws the output away, keeping only its length.
+	 */
+	static final class CountingWriter extends Writer {
+		long count;
+
+		@Override public void write(final char[] cbuf, final int off, final int len) {
+			count += len;
+		}
+
+		@Override public void write(final String str, final int off, final int len) {
+			count += len;
+		}
+
+		@Override public void flush() {
+		}
+
+		@Override public void close() {
+		}
+	}
+}
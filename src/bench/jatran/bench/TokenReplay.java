@@ -0,0 +1,45 @@
+package jatran.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import antlr.Token;
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+
+import jatran.lexing.JavaLexer;
+import jatran.lexing.CharArrayInputBuffer;
+
+/**
+ * TokenReplay: hands out a recorded token stream again, so the parser can be
+ * measured without the lexer underneath it.
+ */
+final class TokenReplay implements TokenStream {
+	/**
+	 * @returns every token of the source, up to and including EOF
+	 */
+	static Token[] record(final char[] source) throws TokenStreamException {
+		JavaLexer lexer = new JavaLexer(new CharArrayInputBuffer(source, source.length));
+		List<Token> tokens = new ArrayList<Token>();
+		Token t;
+
+		do {
+			t = lexer.nextToken();
+			tokens.add(t);
+		} while (t.getType() != Token.EOF_TYPE);
+
+		return tokens.toArray(new Token[tokens.size()]);
+	}
+
+	TokenReplay(final Token[] tokens) {
+		this.tokens = tokens;
+	}
+
+	public Token nextToken() {
+		// the parser never asks past EOF, but stay on it if it does
+		return tokens[next < tokens.length - 1 ? next++ : next];
+	}
+
+	private final Token[] tokens;
+	private int next;
+}
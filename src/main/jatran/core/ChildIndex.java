@@ -0,0 +1,114 @@
+package jatran.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import antlr.collections.AST;
+
+/**
+ * ChildIndex: the children of the wide nodes of one compilation unit, by
+ * type, for SourcePrinter's getChild() and getChildren().
+ *
+ * Children are a linked list of siblings, so finding those of one type
+ * means walking them all. Most nodes have a handful of children, which are
+ * cheaper to walk than to look up; but the object block of a big class or
+ * the statement list of a long method may have thousands, and be asked for
+ * them type by type. Such a node is indexed the first time it is asked, and
+ * answered from its index afterwards without walking or allocating.
+ */
+final class ChildIndex {
+	/**
+	 * The number of children a node needs to have more of to be indexed.
+	 */
+	static final int WIDE = 16;
+
+	/**
+	 * @returns the first child of ast of the given type, or null
+	 */
+	AST child(final AST ast, final int type) {
+		List<AST> children = children(ast, type);
+		return children.isEmpty() ? null : children.get(0);
+	}
+
+	/**
+	 * @returns the children of ast of the given type, or all of them for
+	 * SourcePrinter.ALL, in order; the list is shared and cannot be modified
+	 */
+	List<AST> children(final AST ast, final int type) {
+		Children index = nodes.get(ast);
+		if (null == index) {
+			index = new Children(ast);
+			nodes.put(ast, index);
+		}
+		return index.get(type);
+	}
+
+	/**
+	 * Forgets every node, once their unit is printed.
+	 */
+	void clear() {
+		nodes.clear();
+	}
+
+	private final IdentityHashMap<AST, Children> nodes = new IdentityHashMap<AST, Children>();
+
+	/**
+	 * The children of one node: all of them, and those of each type, with
+	 * the types sorted for a binary search.
+	 */
+	private static final class Children {
+		@SuppressWarnings("unchecked")
+		Children(final AST ast) {
+			int n = 0;
+			for (AST c = ast.getFirstChild(); null != c; c = c.getNextSibling())
+				++n;
+
+			AST[] children = new AST[n];
+			int[] byType = new int[n];
+			int i = 0;
+			for (AST c = ast.getFirstChild(); null != c; c = c.getNextSibling()) {
+				children[i] = c;
+				byType[i++] = c.getType();
+			}
+			all = Collections.unmodifiableList(Arrays.asList(children));
+
+			Arrays.sort(byType);
+			int distinct = 0;
+			for (int j = 0; j < n; ++j)
+				if (0 == j || byType[j] != byType[j - 1])
+					byType[distinct++] = byType[j];
+			types = Arrays.copyOf(byType, distinct);
+
+			lists = new List[distinct];
+			for (int t = 0; t < distinct; ++t) {
+				AST[] ofType = new AST[count(children, types[t])];
+				int k = 0;
+				for (AST c : children)
+					if (c.getType() == types[t])
+						ofType[k++] = c;
+				lists[t] = Collections.unmodifiableList(Arrays.asList(ofType));
+			}
+		}
+
+		List<AST> get(final int type) {
+			if (SourcePrinter.ALL == type)
+				return all;
+			int t = Arrays.binarySearch(types, type);
+			return t < 0 ? Collections.<AST>emptyList() : lists[t];
+		}
+
+		private static int count(final AST[] children, final int type) {
+			int n = 0;
+			for (AST c : children)
+				if (c.getType() == type)
+					++n;
+			return n;
+		}
+
+		private final List<AST> all;
+		private final int[] types;
+		private final List<AST>[] lists;
+	}
+}
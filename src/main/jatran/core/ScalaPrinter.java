@@ -1,7 +1,6 @@
 package jatran.core;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import antlr.collections.AST;
@@ -47,6 +46,10 @@ import antlr.collections.AST;
  * @author eokyere
  */
 public class ScalaPrinter extends SourcePrinter {
+    public ScalaPrinter() {
+        super(TOKENS);
+    }
+
     @Override protected void printRoot(final AST ast) {
         try {
             // first child is IDENT
@@ -101,36 +104,31 @@ public class ScalaPrinter extends SourcePrinter {
     /**
      * We defer printing package and import statements till we are in the class
      * definition level, so we can easily surround the class with the proper
-     * package block, and add imports in the right location
+     * package block, and add imports in the right location.
+     *
+     * Members are printed from the object block a kind at a time, rather
+     * than sorted into lists first: the children of a big block are indexed
+     * by type once, and the IndentingWriter passes the text on as its buffer
+     * fills. A class with thousands of members comes from a source big
+     * enough for OutputFiles to stream its file to an output folder, so it
+     * is written out while it is printed rather than held whole.
      */
     @Override protected void printDefinition(final AST ast, final AST parent) {
         AST objectBlock = getChild(ast, OBJBLOCK);
         
-        List<AST> methods = getChildren(objectBlock, METHOD_DEF);
-        List<AST> imethods = new ArrayList<AST>();
-        List<AST> omethods = new ArrayList<AST>();
-        
-        for (AST m : methods)
-            if (hasStaticMod(m))
-                omethods.add(m);
-            else
-                imethods.add(m);
-        
-        List<AST> vars = getChildren(objectBlock, VARIABLE_DEF);
-        List<AST> ivars = new ArrayList<AST>();
-        List<AST> ovars = new ArrayList<AST>();
-        
-        for (AST v : vars)
-            if (hasStaticMod(v))
-                ovars.add(v);
-            else
-                ivars.add(v);
+        boolean hasClassMembers = false;
+        boolean hasObjectMemebers = false;
+        for (AST c = objectBlock.getFirstChild(); null != c; c = c.getNextSibling())
+            if (c.getType() == METHOD_DEF || c.getType() == VARIABLE_DEF) {
+                if (hasStaticMod(c))
+                    hasObjectMemebers = true;
+                else
+                    hasClassMembers = true;
+            }
 
         // if no class members, but have object members, do not print
         // class/trait
         isClass = ast.getType() == CLASS_DEF; // whether it is a class or trait
-        boolean hasClassMembers = 0 < imethods.size() || 0 < ivars.size();
-        boolean hasObjectMemebers = 0 < omethods.size() || 0 < ovars.size();
         boolean extOrImp = false;
         try {
             extOrImp = null != getChild(ast, EXTENDS_CLAUSE).getFirstChild() || 
@@ -142,12 +140,12 @@ public class ScalaPrinter extends SourcePrinter {
         boolean printClass = extOrImp || hasClassMembers || !hasObjectMemebers;
         
         if (printClass)
-            printScalaClassOrTrait(ast, objectBlock, imethods, ivars);
+            printScalaClassOrTrait(ast, objectBlock);
         
         if (hasObjectMemebers) {
             if (printClass)
                 br(2);
-            printScalaObjectDefinition(ast, objectBlock, omethods, ovars);
+            printScalaObjectDefinition(ast, objectBlock);
         }
     }
     
@@ -170,13 +168,14 @@ public class ScalaPrinter extends SourcePrinter {
     @Override protected void printImplementsClause(final AST ast) {
         if (hasChildren(ast)) {
             List<AST> xs = getChildren(ast, IDENT);
+            int i = 0;
             
             if (!extended)
-                printExtends(xs.remove(0));
+                printExtends(xs.get(i++));
             
-            for (AST x : xs) {
+            for (; i < xs.size(); ++i) {
                 print("with ");
-                print(x);
+                print(xs.get(i));
                 print(" ");
             }
         }
@@ -761,12 +760,13 @@ public class ScalaPrinter extends SourcePrinter {
             }
 	}
 
+	/**
+	 * a * b is printed as a binary operator, so only the * of an import
+	 * comes here
+	 */
 	@Override
 	protected void printStar(final AST ast) {
-            if (hasChildren(ast))
-                printBinaryOperator(ast);
-            else
-                print("_");
+            print("_");
 	}
 
 	@Override
@@ -818,14 +818,6 @@ public class ScalaPrinter extends SourcePrinter {
         
     }
 
-	@Override
-	protected void printMethodCall(final AST child1, final AST child2) {
-            print(child1);
-            print("(");
-            print(child2);
-            print(")");
-	}
-
 	@Override
 	protected void printUnary(final AST ast, final AST child1) {
             printASTName(ast);
@@ -869,96 +861,100 @@ public class ScalaPrinter extends SourcePrinter {
                     print(child3);
 	}
 
+	/**
+	 * Method calls chain as well, being printed callee first; a class
+	 * literal does not, being printed as classOf[...] by printDot().
+	 */
+	@Override protected AST leftOperand(final AST ast) {
+            switch (ast.getType()) {
+            case METHOD_CALL:
+                return ast.getFirstChild();
+            case DOT:
+                AST child1 = ast.getFirstChild();
+                if (null != child1 && null != child1.getNextSibling()
+                        && child1.getNextSibling().getType() == LITERAL_class)
+                    return null;
+            }
+            return super.leftOperand(ast);
+	}
+
 	/**
 	 * Note: <code>a instanceof b</code> becomes
 	 * <code>a.isInstanceOf[b]</code>
 	 */
-	@Override protected void printBinaryOperator(final AST ast) {
-            boolean b = ast.getType() == LITERAL_instanceof;
+	@Override protected void printAfterLeftOperand(final AST ast) {
+            AST child2 = ast.getFirstChild().getNextSibling();
             
-            printWithParens(ast, ast.getFirstChild());
-            print(b ? ".isInstanceOf[" : " " + name(ast) + " ");
-            printWithParens(ast, ast.getFirstChild().getNextSibling());
-            
-            if (b)
+            switch (ast.getType()) {
+            case METHOD_CALL:
+                print("(");
+                print(child2);
+                print(")");
+                break;
+            case LITERAL_instanceof:
+                print(".isInstanceOf[");
+                printWithParens(ast, child2);
                 print("]");
+                break;
+            default:
+                super.printAfterLeftOperand(ast);
+            }
 	}
 
-	@Override protected void setupTokenNames() {
-            if (null != TOKEN_NAMES)
-                return;
-            super.setupTokenNames();
-            TOKEN_NAMES[ABSTRACT] = "abstract";
-            TOKEN_NAMES[FINAL] = "final";
-            TOKEN_NAMES[LITERAL_package] = "package";
-            TOKEN_NAMES[LITERAL_import] = "import";
-            TOKEN_NAMES[LITERAL_void] = "Unit";
-            TOKEN_NAMES[LITERAL_boolean] = "Boolean";
-            TOKEN_NAMES[LITERAL_byte] = "byte";
-            TOKEN_NAMES[LITERAL_char] = "char";
-            TOKEN_NAMES[LITERAL_short] = "short";
-            TOKEN_NAMES[LITERAL_int] = "Int";
-            TOKEN_NAMES[LITERAL_float] = "Float";
-            TOKEN_NAMES[LITERAL_long] = "Long";
-            TOKEN_NAMES[LITERAL_double] = "Double";
-            TOKEN_NAMES[LITERAL_private] = "private";
-            TOKEN_NAMES[LITERAL_public] = "public";
-            TOKEN_NAMES[LITERAL_protected] = "protected";
-            TOKEN_NAMES[LITERAL_static] = "error(static)";
-            TOKEN_NAMES[LITERAL_transient] = "@transient";
-            TOKEN_NAMES[LITERAL_native] = "@native";
-            TOKEN_NAMES[LITERAL_threadsafe] = "threadsafe";
-            TOKEN_NAMES[LITERAL_synchronized] = "synchronized";
-            TOKEN_NAMES[LITERAL_volatile] = "@volatile";
-            TOKEN_NAMES[LITERAL_class] = "class";
-            TOKEN_NAMES[LITERAL_extends] = "extends";
-            TOKEN_NAMES[LITERAL_interface] = "error(interface)";
-            TOKEN_NAMES[LITERAL_implements] = "error(implements)";
-            TOKEN_NAMES[LITERAL_throws] = "throws";
-            TOKEN_NAMES[LITERAL_if] = "if";
-            TOKEN_NAMES[LITERAL_else] = "else";
-            TOKEN_NAMES[LITERAL_for] = "for";
-            TOKEN_NAMES[LITERAL_while] = "while";
-            TOKEN_NAMES[LITERAL_do] = "do";
-            TOKEN_NAMES[LITERAL_break] = "break";
-            TOKEN_NAMES[LITERAL_continue] = "continue";
-            TOKEN_NAMES[LITERAL_return] = "return";
-            TOKEN_NAMES[LITERAL_switch] = "switch";
-            TOKEN_NAMES[LITERAL_throw] = "throw";
-            TOKEN_NAMES[LITERAL_case] = "case";
-            TOKEN_NAMES[LITERAL_default] = "default";
-            TOKEN_NAMES[LITERAL_try] = "try";
-            TOKEN_NAMES[LITERAL_finally] = "finally";
-            TOKEN_NAMES[LITERAL_catch] = "catch";
-            TOKEN_NAMES[LITERAL_instanceof] = "instanceOf";
-            TOKEN_NAMES[LITERAL_this] = "this";
-            TOKEN_NAMES[LITERAL_super] = "super";
-            TOKEN_NAMES[LITERAL_true] = "true";
-            TOKEN_NAMES[LITERAL_false] = "false";
-            TOKEN_NAMES[LITERAL_null] = "null";
-            TOKEN_NAMES[LITERAL_new] = "new";
+	protected static String[] tokenNames() {
+            String[] names = SourcePrinter.TOKENS.names();
+            names[ABSTRACT] = "abstract";
+            names[FINAL] = "final";
+            names[LITERAL_package] = "package";
+            names[LITERAL_import] = "import";
+            names[LITERAL_void] = "Unit";
+            names[LITERAL_boolean] = "Boolean";
+            names[LITERAL_byte] = "byte";
+            names[LITERAL_char] = "char";
+            names[LITERAL_short] = "short";
+            names[LITERAL_int] = "Int";
+            names[LITERAL_float] = "Float";
+            names[LITERAL_long] = "Long";
+            names[LITERAL_double] = "Double";
+            names[LITERAL_private] = "private";
+            names[LITERAL_public] = "public";
+            names[LITERAL_protected] = "protected";
+            names[LITERAL_static] = "error(static)";
+            names[LITERAL_transient] = "@transient";
+            names[LITERAL_native] = "@native";
+            names[LITERAL_threadsafe] = "threadsafe";
+            names[LITERAL_synchronized] = "synchronized";
+            names[LITERAL_volatile] = "@volatile";
+            names[LITERAL_class] = "class";
+            names[LITERAL_extends] = "extends";
+            names[LITERAL_interface] = "error(interface)";
+            names[LITERAL_implements] = "error(implements)";
+            names[LITERAL_throws] = "throws";
+            names[LITERAL_if] = "if";
+            names[LITERAL_else] = "else";
+            names[LITERAL_for] = "for";
+            names[LITERAL_while] = "while";
+            names[LITERAL_do] = "do";
+            names[LITERAL_break] = "break";
+            names[LITERAL_continue] = "continue";
+            names[LITERAL_return] = "return";
+            names[LITERAL_switch] = "switch";
+            names[LITERAL_throw] = "throw";
+            names[LITERAL_case] = "case";
+            names[LITERAL_default] = "default";
+            names[LITERAL_try] = "try";
+            names[LITERAL_finally] = "finally";
+            names[LITERAL_catch] = "catch";
+            names[LITERAL_instanceof] = "instanceOf";
+            names[LITERAL_this] = "this";
+            names[LITERAL_super] = "super";
+            names[LITERAL_true] = "true";
+            names[LITERAL_false] = "false";
+            names[LITERAL_null] = "null";
+            names[LITERAL_new] = "new";
+            return names;
 	}
     
-	@Override protected void setupKeywords() {
-            KEYWORDS = new HashMap<String, Integer>();
-            KEYWORDS.put("def", 1); 
-            KEYWORDS.put("forSome", 1); 
-            KEYWORDS.put("implicit", 1); 
-            KEYWORDS.put("lazy", 1); 
-            KEYWORDS.put("match", 1); 
-            KEYWORDS.put("object", 1); 
-            KEYWORDS.put("override", 1); 
-            KEYWORDS.put("requires", 1); 
-            KEYWORDS.put("sealed", 1); 
-            KEYWORDS.put("trait", 1); 
-            KEYWORDS.put("type", 1); 
-            KEYWORDS.put("val", 1); 
-            KEYWORDS.put("var", 1); 
-            KEYWORDS.put("with", 1); 
-            KEYWORDS.put("yield", 1);		
-	}
-    
-
 	private void printExtends(final AST ident) {
             print("extends ");
             extended = true;
@@ -973,7 +969,7 @@ public class ScalaPrinter extends SourcePrinter {
 	}
 
 	// TODO: ctors
-	private void printScalaClassOrTrait(final AST ast, final AST obj, final List<AST> imethods, final List<AST> ivars) {
+	private void printScalaClassOrTrait(final AST ast, final AST obj) {
             print(isClass ? "class " : "trait ");
             print(getChild(ast, IDENT));
             
@@ -985,44 +981,53 @@ public class ScalaPrinter extends SourcePrinter {
             print(getChild(ast, IMPLEMENTS_CLAUSE));
             startBlock();
             printConstructors(obj);
-            print(imethods);
-            print(getChildren(obj, INSTANCE_INIT));
-            print(ivars);
+            printMembers(obj, METHOD_DEF, INSTANCE);
+            printMembers(obj, INSTANCE_INIT, EITHER);
+            printMembers(obj, VARIABLE_DEF, INSTANCE);
             printChildren(obj, "\n", CLASS_DEF);
             endBlock();
 	}
 
 	private void printConstructors(final AST obj) {
-            List<AST> ctors = getChildren(obj, CTOR_DEF);
-            int n = ctors.size();
+            AST ctor = getChild(obj, CTOR_DEF);
             
-            if (0 < n) {
+            if (null != ctor) {
                 print("/*");
                 br();
-		
-                print(ctors.get(0));
-                for (int i = 1; i < n; ++i) {
-                    br();
-                    print(ctors.get(i));
-                }
-                
+                printMembers(obj, CTOR_DEF, EITHER);
                 print("*/");
                 br();
             }
 	}
 
-	private void printScalaObjectDefinition(final AST ast, final AST obj,
-                                                final List<AST> omethods, final List<AST> ovars) {
+	private void printScalaObjectDefinition(final AST ast, final AST obj) {
             print("object ");
             print(getChild(ast, IDENT));
             print(" ");
             startBlock();
-            print(omethods);
-            print(getChildren(obj, STATIC_INIT));
-            print(ovars);
+            printMembers(obj, METHOD_DEF, STATIC);
+            printMembers(obj, STATIC_INIT, EITHER);
+            printMembers(obj, VARIABLE_DEF, STATIC);
             endBlock();
 	}
 
+	/**
+	 * Prints the members of obj of the given type, static, instance or
+	 * either, a line apart, as print(List) would print them.
+	 */
+	private void printMembers(final AST obj, final int type, final int statics) {
+            boolean first = true;
+            
+            for (AST c : getChildren(obj, type)) {
+                if (EITHER != statics && hasStaticMod(c) != (STATIC == statics))
+                    continue;
+                if (!first)
+                    br();
+                print(c);
+                first = false;
+            }
+	}
+
 	private boolean hasStaticMod(final AST method) {
             return hasModifier(method, LITERAL_static);
 	}
@@ -1034,12 +1039,23 @@ public class ScalaPrinter extends SourcePrinter {
 	private boolean hasModifier(final AST method, final int t) {
             AST modifiers = getChild(method, MODIFIERS);
             
-            for (AST c : getChildren(modifiers))
+            for (AST c = modifiers.getFirstChild(); null != c; c = c.getNextSibling())
                 if (c.getType() == t)
                     return true;
             return false;
 	}
 
+    public final static TokenTable TOKENS = new TokenTable(tokenNames(),
+            "def", "forSome", "implicit", "lazy", "match", "object", "override", "requires",
+            "sealed", "trait", "type", "val", "var", "with", "yield");
+
+    /**
+     * Which members printMembers() prints.
+     */
+    private static final int INSTANCE = 0;
+    private static final int STATIC = 1;
+    private static final int EITHER = 2;
+
     private boolean isClass = false;
     private boolean extended = false;
 }
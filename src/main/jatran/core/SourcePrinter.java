@@ -2,14 +2,17 @@ package jatran.core;
 
 import jatran.lexing.JavaTokenTypes;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
 
-import jemitter.IndentingPrintStream;
+import jemitter.IndentingWriter;
 import antlr.collections.AST;
 
 /**
@@ -52,9 +55,9 @@ import antlr.collections.AST;
  *</ol>
  *
  * <p> <b>Indenting</b><br>
- * One important issue is how to do proper indenting. The IndentingPrintStream
- * class handles indenting. Here, we simply create an IndentingPrintStream from
- * our normal PrintStream (either System.out or whatever was passed to setOut()).
+ * One important issue is how to do proper indenting. The IndentingWriter
+ * class handles indenting. Here, we simply create an IndentingWriter over
+ * our normal output (either System.out or whatever was passed to print()).
  * And then we call increaseIndent() and decreaseIndent() as we see "{" and "}"
  * AST nodes.
  *
@@ -65,11 +68,27 @@ import antlr.collections.AST;
  * The printWithParens() method is used to print all unary and binary operators.
  * This method uses a precedence table to determine whether it needs to print
  * parentheses or not.
+ *
+ * <p> <b>Deep Expressions</b><br>
+ *
+ * Operators that print their left operand first, such as a + b or
+ * a.b(), nest down their left operands: a + b + c is a PLUS whose left
+ * operand is the PLUS of a + b. Generated code strings together thousands
+ * of these, too many to recurse down, so print() hands them to printChain(),
+ * which walks down the left operands with an explicit stack and prints the
+ * rest of each operator on the way back up. leftOperand() and
+ * printAfterLeftOperand() say which operators chain and how.
  */
 public abstract class SourcePrinter implements JavaTokenTypes {
 	public SourcePrinter() {
-		setupTokenNames();
-		setupKeywords();
+		this(TOKENS);
+	}
+
+	/**
+	 * @param tokens the (shared, immutable) token table of the target dialect
+	 */
+	protected SourcePrinter(final TokenTable tokens) {
+		this.tokens = tokens;
 	}
 
 	public void print(final AST ast, final PrintStream stream, final boolean untyped) {
@@ -81,22 +100,50 @@ public abstract class SourcePrinter implements JavaTokenTypes {
 		if (null == stream)
 			stream = System.out;
 
-		out = new IndentingPrintStream(stream);
+		try {
+			print(ast, new OutputStreamWriter(stream));
+		} catch (IOException e) {
+			// a PrintStream keeps its failures to itself, for its checkError()
+		}
+	}
 
-		print(ast);
+	public void print(final AST ast, final Writer writer, final boolean untyped) throws IOException {
+		this.untyped = untyped;
+		print(ast, writer);
+	}
+
+	/**
+	 * Prints the AST through a buffer that is flushed to writer once done;
+	 * the writer itself is left open.
+	 * @throws IOException if writing to writer failed at any point
+	 */
+	public void print(final AST ast, final Writer writer) throws IOException {
+		out = new IndentingWriter(writer);
+
+		try {
+			print(ast);
+		} finally {
+			index.clear();
+		}
+		out.flush();
+		if (out.checkError())
+			throw new IOException("could not write the translation");
 	}
 
 	protected void print (final AST ast) {
 		if (null == ast)
 			return;
 
-		AST parent = null;
-
-		if (!stack.isEmpty())
-			parent =  stack.peek();
+		AST parent = stack.peek();
 
 		stack.push(ast);
 
+		if (null != leftOperand(ast)) {
+			printChain(ast);
+			finished(ast);
+			return;
+		}
+
 		AST child1 = ast.getFirstChild();
 		AST child2 = null;
 		AST child3 = null;
@@ -168,38 +215,6 @@ public abstract class SourcePrinter implements JavaTokenTypes {
 			case SLIST:
 				printStatementList(ast); break;
 
-			case PLUS:
-			case MINUS:
-			case DIV:
-			case MOD:
-			case NOT_EQUAL:
-			case EQUAL:
-			case LT:
-			case GT:
-			case LE:
-			case GE:
-			case LOR:
-			case LAND:
-			case BOR:
-			case BXOR:
-			case BAND:
-			case SL:
-			case SR:
-			case BSR:
-			case LITERAL_instanceof:
-			case PLUS_ASSIGN:
-			case MINUS_ASSIGN:
-			case STAR_ASSIGN:
-			case DIV_ASSIGN:
-			case MOD_ASSIGN:
-			case SR_ASSIGN:
-			case BSR_ASSIGN:
-			case SL_ASSIGN:
-			case BAND_ASSIGN:
-			case BXOR_ASSIGN:
-			case BOR_ASSIGN:
-				printBinaryOperator(ast); break;
-
 			case LITERAL_for:
 				printForLoop(ast); break;
 
@@ -413,11 +428,61 @@ public abstract class SourcePrinter implements JavaTokenTypes {
 				err.println("Invalid type:" + ast.getType()); break;
 		}
 		
+		finished(ast);
+	}
+
+	private void finished(final AST ast) {
 		stack.pop();
 		previousType = ast.getType();
 		brApplied = false;
 	}
 
+	/**
+	 * Prints ast, an operator with a leftOperand(), and the chain of such
+	 * operators down its left operands, without recursing down the chain.
+	 * The operators are stacked on the way down, opening the parentheses
+	 * printWithParens() would have, and the bottom operand is printed; then
+	 * each operator is finished on the way back up, innermost first, by
+	 * printAfterLeftOperand(). ast is on the stack already, and is left
+	 * there.
+	 */
+	private void printChain(final AST ast) {
+		int bottom = chained;
+		AST node = ast;
+		AST operand = leftOperand(node);
+
+		while (true) {
+			boolean parens = node.getType() != DOT && node.getType() != METHOD_CALL
+					&& getPrecedence(node) < getPrecedence(operand);
+			if (chained == chain.length) {
+				chain = Arrays.copyOf(chain, 2 * chained);
+				parenthesized = Arrays.copyOf(parenthesized, 2 * chained);
+			}
+			chain[chained] = node;
+			parenthesized[chained++] = parens;
+			if (parens)
+				print("(");
+
+			if (null == operand || null == leftOperand(operand))
+				break;
+			stack.push(operand);
+			node = operand;
+			operand = leftOperand(node);
+		}
+
+		print(operand);
+
+		while (chained > bottom) {
+			node = chain[--chained];
+			chain[chained] = null;
+			if (parenthesized[chained])
+				print(")");
+			printAfterLeftOperand(node);
+			if (node != ast)
+				finished(node);
+		}
+	}
+
 	protected void printIdent(final AST ast) {}
 
 	protected void printTypeParameter(final AST child1, final AST child2) {}
@@ -484,12 +549,13 @@ public abstract class SourcePrinter implements JavaTokenTypes {
 	 */
 	protected boolean printChildren(final AST ast, final String separator, final int type) {
 		boolean ret = false;
+		boolean first = true;
 		AST child = ast.getFirstChild();
 		
 		while (child != null) {
 			if (type == ALL || child.getType() == type) {
 				// print a separator before each printed child (except first)
-				if (!(ast.getFirstChild() == child))
+				if (!first)
 					if (separator.endsWith("\n")) {
 						out.print(separator.substring(0,separator.length()-1));
 						br();
@@ -499,6 +565,7 @@ public abstract class SourcePrinter implements JavaTokenTypes {
 				print(child);
 			}
 			child = child.getNextSibling();
+			first = false;
 		}
 
 		return ret;
@@ -629,10 +696,65 @@ public abstract class SourcePrinter implements JavaTokenTypes {
         print(child2);
     }
 
-    protected void printBinaryOperator(final AST ast) {
-        printWithParens(ast, ast.getFirstChild());
-        print(" " + name(ast) + " ");
-        printWithParens(ast, ast.getFirstChild().getNextSibling());
+    /**
+     * @returns the operand of ast printed first, with nothing before it but
+     * parentheses, if ast is to be printed by printChain(); otherwise null,
+     * and ast is printed by its own print method. Binary operators and dots
+     * are chained here.
+     */
+    protected AST leftOperand(final AST ast) {
+        switch (ast.getType()) {
+        case STAR:
+        case PLUS:
+        case MINUS:
+        case DIV:
+        case MOD:
+        case NOT_EQUAL:
+        case EQUAL:
+        case LT:
+        case GT:
+        case LE:
+        case GE:
+        case LOR:
+        case LAND:
+        case BOR:
+        case BXOR:
+        case BAND:
+        case SL:
+        case SR:
+        case BSR:
+        case LITERAL_instanceof:
+        case PLUS_ASSIGN:
+        case MINUS_ASSIGN:
+        case STAR_ASSIGN:
+        case DIV_ASSIGN:
+        case MOD_ASSIGN:
+        case SR_ASSIGN:
+        case BSR_ASSIGN:
+        case SL_ASSIGN:
+        case BAND_ASSIGN:
+        case BXOR_ASSIGN:
+        case BOR_ASSIGN:
+        case DOT:
+            return ast.getFirstChild();
+        }
+        return null;
+    }
+
+    /**
+     * Prints the rest of ast, an operator with a leftOperand(), once that
+     * operand has been printed.
+     */
+    protected void printAfterLeftOperand(final AST ast) {
+        AST right = ast.getFirstChild().getNextSibling();
+
+        if (ast.getType() == DOT) {
+            print(".");
+            print(right);
+        } else {
+            print(" " + name(ast) + " ");
+            printWithParens(ast, right);
+        }
     }
     
     protected void printASTName(final AST ast) {
@@ -641,7 +763,7 @@ public abstract class SourcePrinter implements JavaTokenTypes {
     
     protected void printASTText(final AST ast) {
         String s = ast.getText().trim();
-        if (!(null == KEYWORDS.get(s))) {
+        if (tokens.isKeyword(s)) {
             print("__kwd_" + s);
             return;
         }
@@ -698,12 +820,15 @@ public abstract class SourcePrinter implements JavaTokenTypes {
     }
     
     /**
-     * Find a child of the given AST that has the given type
-     * @returns a child AST of the given type. If it can't find a child of the given type, return null.
+     * @returns the first child of ast of the given type, or null; the
+     * children of a wide node are looked up in its index, once past the
+     * first few
      */
     protected AST getChild(final AST ast, final int type) {
         AST child = ast.getFirstChild();
-        while (child != null) {
+        for (int i = 0; child != null; ++i) {
+            if (i == ChildIndex.WIDE)
+                return index.child(ast, type);
             if (ALL == type || child.getType() == type)
                 return child;
             child = child.getNextSibling();
@@ -717,11 +842,17 @@ public abstract class SourcePrinter implements JavaTokenTypes {
         return getChildren(ast, ALL);
     }
     
+    /**
+     * @returns the children of ast of the given type, in order; the list is
+     * not to be modified, being shared if ast is a wide node
+     */
     protected List<AST> getChildren(final AST ast, final int type) {
         List<AST> list = new ArrayList<AST>();
         
         AST child = ast.getFirstChild();
-        while(child != null) {
+        for (int i = 0; child != null; ++i) {
+            if (i == ChildIndex.WIDE)
+                return index.children(ast, type);
             if (ALL == type || child.getType() == type)
                 list.add(child);
             child = child.getNextSibling();
@@ -786,7 +917,7 @@ public abstract class SourcePrinter implements JavaTokenTypes {
     }
 
     protected String name(final int type) {
-        return TOKEN_NAMES[type];
+        return tokens.name(type);
     }
 
     protected void todo(AST ast) {
@@ -895,72 +1026,80 @@ public abstract class SourcePrinter implements JavaTokenTypes {
         return -2;
     }
 
-    protected void setupKeywords() {
-        KEYWORDS = new HashMap<String, Integer>();
-    }
-    
     // Map each AST token type to a String
-    protected void setupTokenNames() {
-        if (null != TOKEN_NAMES)
-            return;
+    protected static String[] tokenNames() {
+        String[] names = new String[200];
+        for (int i=0; i<names.length; i++)
+            names[i] = "ERROR:" + i;
         
-        TOKEN_NAMES = new String[200];
-        for (int i=0; i<TOKEN_NAMES.length; i++)
-            TOKEN_NAMES[i] = "ERROR:" + i;
-        
-        TOKEN_NAMES[POST_INC]="++";
-        TOKEN_NAMES[POST_DEC]="--";
-        TOKEN_NAMES[UNARY_MINUS]="-";
-        TOKEN_NAMES[UNARY_PLUS]="+";
-        TOKEN_NAMES[STAR]="*";
-        TOKEN_NAMES[ASSIGN]="=";
-        TOKEN_NAMES[PLUS_ASSIGN]="+=";
-        TOKEN_NAMES[MINUS_ASSIGN]="-=";
-        TOKEN_NAMES[STAR_ASSIGN]="*=";
-        TOKEN_NAMES[DIV_ASSIGN]="/=";
-        TOKEN_NAMES[MOD_ASSIGN]="%=";
-        TOKEN_NAMES[SR_ASSIGN]=">>=";
-        TOKEN_NAMES[BSR_ASSIGN]=">>>=";
-        TOKEN_NAMES[SL_ASSIGN]="<<=";
-        TOKEN_NAMES[BAND_ASSIGN]="&=";
-        TOKEN_NAMES[BXOR_ASSIGN]="^=";
-        TOKEN_NAMES[BOR_ASSIGN]="|=";
-        TOKEN_NAMES[QUESTION]="?";
-        TOKEN_NAMES[LOR]="||";
-        TOKEN_NAMES[LAND]="&&";
-        TOKEN_NAMES[BOR]="|";
-        TOKEN_NAMES[BXOR]="^";
-        TOKEN_NAMES[BAND]="&";
-        TOKEN_NAMES[NOT_EQUAL]="!=";
-        TOKEN_NAMES[EQUAL]="==";
-        TOKEN_NAMES[LT]="<";
-        TOKEN_NAMES[GT]=">";
-        TOKEN_NAMES[LE]="<=";
-        TOKEN_NAMES[GE]=">=";
-        TOKEN_NAMES[SL]="<<";
-        TOKEN_NAMES[SR]=">>";
-        TOKEN_NAMES[BSR]=">>>";
-        TOKEN_NAMES[PLUS]="+";
-        TOKEN_NAMES[MINUS]="-";
-        TOKEN_NAMES[DIV]="/";
-        TOKEN_NAMES[MOD]="%";
-        TOKEN_NAMES[INC]="++";
-        TOKEN_NAMES[DEC]="--";
-        TOKEN_NAMES[BNOT]="~";
-        TOKEN_NAMES[LNOT]="!";
-        TOKEN_NAMES[FINAL]="";
+        names[POST_INC]="++";
+        names[POST_DEC]="--";
+        names[UNARY_MINUS]="-";
+        names[UNARY_PLUS]="+";
+        names[STAR]="*";
+        names[ASSIGN]="=";
+        names[PLUS_ASSIGN]="+=";
+        names[MINUS_ASSIGN]="-=";
+        names[STAR_ASSIGN]="*=";
+        names[DIV_ASSIGN]="/=";
+        names[MOD_ASSIGN]="%=";
+        names[SR_ASSIGN]=">>=";
+        names[BSR_ASSIGN]=">>>=";
+        names[SL_ASSIGN]="<<=";
+        names[BAND_ASSIGN]="&=";
+        names[BXOR_ASSIGN]="^=";
+        names[BOR_ASSIGN]="|=";
+        names[QUESTION]="?";
+        names[LOR]="||";
+        names[LAND]="&&";
+        names[BOR]="|";
+        names[BXOR]="^";
+        names[BAND]="&";
+        names[NOT_EQUAL]="!=";
+        names[EQUAL]="==";
+        names[LT]="<";
+        names[GT]=">";
+        names[LE]="<=";
+        names[GE]=">=";
+        names[SL]="<<";
+        names[SR]=">>";
+        names[BSR]=">>>";
+        names[PLUS]="+";
+        names[MINUS]="-";
+        names[DIV]="/";
+        names[MOD]="%";
+        names[INC]="++";
+        names[DEC]="--";
+        names[BNOT]="~";
+        names[LNOT]="!";
+        names[FINAL]="";
+        return names;
     }
     
     public final static int ROOT_ID = 0;
     
     protected static int ALL = -1;
-    protected IndentingPrintStream out; //TODO: make dynamic
+    protected IndentingWriter out; //TODO: make dynamic
     protected PrintStream err = System.out;
-    protected Stack<AST> stack = new Stack<AST>();
+    protected final Deque<AST> stack = new ArrayDeque<AST>();
+
+    /**
+     * The children of the wide nodes of the unit being printed.
+     */
+    private final ChildIndex index = new ChildIndex();
     protected boolean untyped = false;
     
-    protected static String[] TOKEN_NAMES = null;
-    protected static Map<String, Integer> KEYWORDS = null;
+    public final static TokenTable TOKENS = new TokenTable(tokenNames());
+
+    protected final TokenTable tokens;
     protected int previousType = -1;
     protected boolean brApplied = false;
+
+    /**
+     * The operators printChain() is in the middle of, and whether it opened
+     * parentheses around the left operand of each.
+     */
+    private AST[] chain = new AST[64];
+    private boolean[] parenthesized = new boolean[64];
+    private int chained = 0;
 }
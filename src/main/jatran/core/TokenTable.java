@@ -0,0 +1,50 @@
+package jatran.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * TokenTable: the token names and reserved words of one target dialect.
+ *
+ * A table is built once per dialect and never changes afterwards, so a single
+ * instance is shared read-only by every printer of that dialect, on any thread.
+ * Printers look up the text to emit for an operator or modifier token with
+ * name(), and ask isKeyword() whether an identifier has to be escaped because
+ * it is reserved in the target language.
+ */
+public final class TokenTable {
+	/**
+	 * @param names text for each token type, indexed by type; copied
+	 * @param keywords identifiers reserved in the target language
+	 */
+	public TokenTable(final String[] names, final String... keywords) {
+		this.names = names.clone();
+		this.keywords = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(keywords)));
+	}
+
+	/**
+	 * @returns the text the target language uses for the given token type
+	 */
+	public String name(final int type) {
+		return names[type];
+	}
+
+	/**
+	 * @returns true iff s is reserved in the target language
+	 */
+	public boolean isKeyword(final String s) {
+		return keywords.contains(s);
+	}
+
+	/**
+	 * @returns a copy of the names, for a dialect that extends this one
+	 */
+	public String[] names() {
+		return names.clone();
+	}
+
+	private final String[] names;
+	private final Set<String> keywords;
+}
@@ -0,0 +1,70 @@
+package jatran.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ArchiveSink: translated files written as the entries of a new zip or jar
+ * archive, one at a time, in the order they come in. The archive is only
+ * complete once closed; a path can be written once.
+ */
+public final class ArchiveSink implements Sink {
+	public ArchiveSink(final File archive) throws IOException {
+		File parent = archive.getAbsoluteFile().getParentFile();
+		if (null != parent)
+			parent.mkdirs();
+		zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)));
+	}
+
+	public synchronized void write(final String path, final ByteBuffer bytes) throws IOException {
+		zip.putNextEntry(new ZipEntry(path));
+		if (bytes.hasArray()) {
+			zip.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+			bytes.position(bytes.limit());
+		} else {
+			byte[] content = new byte[bytes.remaining()];
+			bytes.get(content);
+			zip.write(content);
+		}
+		zip.closeEntry();
+		written.add(path);
+	}
+
+	public synchronized boolean exists(final String path) {
+		return written.contains(path);
+	}
+
+	public boolean streams() {
+		return false;
+	}
+
+	/**
+	 * Cannot be done: the archive is written one entry at a time, so an
+	 * entry written while it is printed would hold up the others.
+	 */
+	public OutputStream open(final String path) {
+		throw new UnsupportedOperationException("an archive sink does not stream");
+	}
+
+	/**
+	 * Cannot be done: an entry written is in the archive for good.
+	 */
+	public boolean delete(final String path) throws IOException {
+		throw new IOException("cannot delete " + path + " from an archive");
+	}
+
+	public synchronized void close() throws IOException {
+		zip.close();
+	}
+
+	private final ZipOutputStream zip;
+	private final Set<String> written = new HashSet<String>();
+}
@@ -0,0 +1,79 @@
+package jatran.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ArchiveSources: the java files in a zip or jar archive that a Globs takes
+ * in, named by their paths inside it. The archive stays open until close().
+ */
+public final class ArchiveSources implements Sources {
+	public ArchiveSources(final File archive) throws IOException {
+		this(archive, Globs.ALL);
+	}
+
+	public ArchiveSources(final File archive, final Globs globs) throws IOException {
+		zip = new ZipFile(archive);
+		Enumeration<? extends ZipEntry> all = zip.entries();
+		while (all.hasMoreElements()) {
+			ZipEntry entry = all.nextElement();
+			if (!entry.isDirectory() && entry.getName().endsWith(".java") && globs.matches(entry.getName()))
+				entries.put(new File(entry.getName()), entry);
+		}
+	}
+
+	/**
+	 * @returns the java files in the order the archive lists them
+	 */
+	public List<File> list() {
+		return new ArrayList<File>(entries.keySet());
+	}
+
+	/**
+	 * Hands every source to found in turn, on this thread.
+	 */
+	public void discover(final ForkJoinPool pool, final Found found) {
+		for (File source : list())
+			found.found(source);
+	}
+
+	public ByteBuffer read(final File source) throws IOException {
+		ZipEntry entry = entries.get(source);
+		if (null == entry)
+			throw new IOException("no source " + source + " in " + zip.getName());
+
+		InputStream in = zip.getInputStream(entry);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+			byte[] buf = new byte[8192];
+			for (int n = in.read(buf); n >= 0; n = in.read(buf))
+				bytes.write(buf, 0, n);
+			return ByteBuffer.wrap(bytes.toByteArray());
+		} finally {
+			in.close();
+		}
+	}
+
+	public long size(final File source) {
+		ZipEntry entry = entries.get(source);
+		return null == entry ? -1 : entry.getSize();
+	}
+
+	public void close() throws IOException {
+		zip.close();
+	}
+
+	private final ZipFile zip;
+	private final Map<File, ZipEntry> entries = new LinkedHashMap<File, ZipEntry>();
+}
@@ -0,0 +1,80 @@
+package jatran.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * DirectorySink: translated files written under a folder, each with a
+ * single FileChannel write and closed as soon as it is written, or streamed
+ * to the file as it is printed.
+ */
+public final class DirectorySink implements Sink {
+	public DirectorySink(final File root) {
+		this.root = root;
+	}
+
+	public void write(final String path, final ByteBuffer bytes) throws IOException {
+		File file = file(path);
+		file.getParentFile().mkdirs();
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			while (bytes.hasRemaining())
+				channel.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	public boolean exists(final String path) {
+		return file(path).isFile();
+	}
+
+	public boolean streams() {
+		return true;
+	}
+
+	public OutputStream open(final String path) throws IOException {
+		File file = file(path);
+		file.getParentFile().mkdirs();
+		return new FileOutputStream(file);
+	}
+
+	/**
+	 * Removes the file at path, and the folders it leaves empty below the root.
+	 */
+	public boolean delete(final String path) {
+		File file = file(path);
+		if (!file.isFile() || !file.delete())
+			return false;
+
+		File root = this.root.getAbsoluteFile();
+		for (File folder = file.getAbsoluteFile().getParentFile(); null != folder && !folder.equals(root); folder = folder.getParentFile()) {
+			String[] left = folder.list();
+			if (null == left || left.length > 0 || !folder.delete())
+				break;
+		}
+		return true;
+	}
+
+	public void close() {
+	}
+
+	public File root() {
+		return root;
+	}
+
+	/**
+	 * @returns the file at path under the root
+	 */
+	public File file(final String path) {
+		return new File(root, path.replace('/', File.separatorChar));
+	}
+
+	private final File root;
+}
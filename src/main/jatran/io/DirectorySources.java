@@ -0,0 +1,123 @@
+package jatran.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jatran.lexing.CharArrayInputBuffer;
+
+/**
+ * DirectorySources: the java files under a folder, or a single java file,
+ * that a Globs takes in, by their paths relative to the folder.
+ *
+ * discover() lists each folder in a task of its own, so that the folders of
+ * a big tree on a slow file system are listed several at once, and each
+ * source is handed on as soon as its folder is listed rather than once the
+ * whole tree is.
+ */
+public final class DirectorySources implements Sources {
+	public DirectorySources(final File root) {
+		this(root, Globs.ALL);
+	}
+
+	public DirectorySources(final File root, final Globs globs) {
+		this.root = root;
+		this.globs = globs;
+	}
+
+	/**
+	 * @returns the java files under the root, each folder's before those of
+	 * its subfolders, in the order the file system lists them
+	 */
+	public List<File> list() {
+		List<File> files = new ArrayList<File>();
+		if (root.isDirectory())
+			collect(root, "", files);
+		else if (accepts(root.getName()))
+			files.add(root);
+		return files;
+	}
+
+	public void discover(final ForkJoinPool pool, final Found found) {
+		if (root.isDirectory())
+			pool.invoke(new Walk(root, "", found));
+		else if (accepts(root.getName()))
+			found.found(root);
+	}
+
+	public ByteBuffer read(final File source) throws IOException {
+		return CharArrayInputBuffer.load(source);
+	}
+
+	public long size(final File source) {
+		return source.length();
+	}
+
+	public void close() {
+	}
+
+	public File root() {
+		return root;
+	}
+
+	private void collect(final File folder, final String prefix, final List<File> files) {
+		File[] children = folder.listFiles();
+		if (null == children)
+			return;
+
+		for (File child : children) {
+			String path = prefix + child.getName();
+			if (child.isDirectory()) {
+				if (!globs.skips(path))
+					collect(child, path + "/", files);
+			} else if (accepts(path)) {
+				files.add(child);
+			}
+		}
+	}
+
+	private boolean accepts(final String path) {
+		return path.endsWith(".java") && globs.matches(path);
+	}
+
+	/**
+	 * Lists one folder, hands on its sources and walks its subfolders in
+	 * tasks of their own.
+	 */
+	private final class Walk extends RecursiveAction {
+		Walk(final File folder, final String prefix, final Found found) {
+			this.folder = folder;
+			this.prefix = prefix;
+			this.found = found;
+		}
+
+		@Override protected void compute() {
+			File[] children = folder.listFiles();
+			if (null == children)
+				return;
+
+			List<Walk> subfolders = new ArrayList<Walk>();
+			for (File child : children) {
+				String path = prefix + child.getName();
+				if (child.isDirectory()) {
+					if (!globs.skips(path))
+						subfolders.add(new Walk(child, path + "/", found));
+				} else if (accepts(path)) {
+					found.found(child);
+				}
+			}
+			invokeAll(subfolders);
+		}
+
+		private final File folder;
+		private final String prefix;
+		private final Found found;
+	}
+
+	private final File root;
+	private final Globs globs;
+}
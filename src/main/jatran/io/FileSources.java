@@ -0,0 +1,45 @@
+package jatran.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import jatran.lexing.CharArrayInputBuffer;
+
+/**
+ * FileSources: a given list of java files, such as those a Watcher saw
+ * change, translated in the order given.
+ */
+public final class FileSources implements Sources {
+	public FileSources(final List<File> files) {
+		this.files = new ArrayList<File>(files);
+	}
+
+	public List<File> list() {
+		return new ArrayList<File>(files);
+	}
+
+	/**
+	 * Hands every file to found in turn, on this thread.
+	 */
+	public void discover(final ForkJoinPool pool, final Found found) {
+		for (File file : files)
+			found.found(file);
+	}
+
+	public ByteBuffer read(final File source) throws IOException {
+		return CharArrayInputBuffer.load(source);
+	}
+
+	public long size(final File source) {
+		return source.length();
+	}
+
+	public void close() {
+	}
+
+	private final List<File> files;
+}
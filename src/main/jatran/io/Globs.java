@@ -0,0 +1,94 @@
+package jatran.io;
+
+import java.util.regex.Pattern;
+
+/**
+ * Globs: which sources to translate, by include and exclude patterns over
+ * their '/' separated paths relative to where sources are found, such as
+ * com/acme/Foo.java. A source is translated if it matches an include, or
+ * there are none, and matches no exclude.
+ *
+ * In a pattern * stands for any characters but '/' and ? for any one of
+ * them; ** stands for any characters at all, and ** followed by '/' for any
+ * number of whole folders, none included. A folder is not walked at all if
+ * an exclude ending in /** takes in everything under it.
+ */
+public final class Globs {
+	/**
+	 * Takes in every source.
+	 */
+	public static final Globs ALL = new Globs(new String[0], new String[0]);
+
+	public Globs(final String[] includes, final String[] excludes) {
+		this.includes = compile(includes, false);
+		this.excludes = compile(excludes, false);
+		this.excludedFolders = compile(excludes, true);
+	}
+
+	/**
+	 * @returns whether the source at path is to be translated
+	 */
+	public boolean matches(final String path) {
+		return (0 == includes.length || any(includes, path)) && !any(excludes, path);
+	}
+
+	/**
+	 * @returns whether nothing in the folder at path is to be translated
+	 */
+	public boolean skips(final String folder) {
+		return any(excludedFolders, folder);
+	}
+
+	private static boolean any(final Pattern[] patterns, final String path) {
+		for (Pattern p : patterns)
+			if (p.matcher(path).matches())
+				return true;
+		return false;
+	}
+
+	/**
+	 * @param folders whether to compile only the patterns ending in /**,
+	 * without it, to match the folders they take in whole
+	 */
+	private static Pattern[] compile(final String[] globs, final boolean folders) {
+		int n = 0;
+		Pattern[] patterns = new Pattern[globs.length];
+		for (String glob : globs) {
+			if (!folders)
+				patterns[n++] = Pattern.compile(regex(glob));
+			else if (glob.endsWith("/**"))
+				patterns[n++] = Pattern.compile(regex(glob.substring(0, glob.length() - 3)));
+		}
+		Pattern[] compiled = new Pattern[n];
+		System.arraycopy(patterns, 0, compiled, 0, n);
+		return compiled;
+	}
+
+	private static String regex(final String glob) {
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (i < glob.length()) {
+			char c = glob.charAt(i);
+			if (glob.startsWith("**/", i)) {
+				sb.append("(?:.*/)?");
+				i += 3;
+			} else if (glob.startsWith("**", i)) {
+				sb.append(".*");
+				i += 2;
+			} else {
+				if ('*' == c)
+					sb.append("[^/]*");
+				else if ('?' == c)
+					sb.append("[^/]");
+				else
+					sb.append(Pattern.quote(String.valueOf(c)));
+				++i;
+			}
+		}
+		return sb.toString();
+	}
+
+	private final Pattern[] includes;
+	private final Pattern[] excludes;
+	private final Pattern[] excludedFolders;
+}
@@ -0,0 +1,57 @@
+package jatran.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * MemorySink: translated files kept in memory, by path, for tests,
+ * benchmarks and embedders to read back.
+ */
+public final class MemorySink implements Sink {
+	public void write(final String path, final ByteBuffer bytes) {
+		byte[] content = new byte[bytes.remaining()];
+		bytes.get(content);
+		files.put(path, content);
+	}
+
+	public boolean exists(final String path) {
+		return files.containsKey(path);
+	}
+
+	public boolean streams() {
+		return false;
+	}
+
+	/**
+	 * Cannot be done: a file is kept whole in memory all the same.
+	 */
+	public OutputStream open(final String path) {
+		throw new UnsupportedOperationException("a memory sink does not stream");
+	}
+
+	public boolean delete(final String path) {
+		return null != files.remove(path);
+	}
+
+	/**
+	 * @returns the content of the file at path, or null
+	 */
+	public byte[] get(final String path) {
+		return files.get(path);
+	}
+
+	/**
+	 * @returns every file written, by path in order; a live view
+	 */
+	public SortedMap<String, byte[]> files() {
+		return Collections.unmodifiableSortedMap(files);
+	}
+
+	public void close() {
+	}
+
+	private final ConcurrentSkipListMap<String, byte[]> files = new ConcurrentSkipListMap<String, byte[]>();
+}
@@ -0,0 +1,66 @@
+package jatran.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * MemorySources: java sources held in memory, as tests, benchmarks and
+ * embedders put them, under the paths they are put with.
+ */
+public final class MemorySources implements Sources {
+	/**
+	 * Adds a source, or replaces the one at path.
+	 */
+	public synchronized MemorySources put(final String path, final byte[] content) {
+		sources.put(new File(path), content);
+		return this;
+	}
+
+	/**
+	 * Adds a source, encoded in UTF-8.
+	 */
+	public MemorySources put(final String path, final String content) {
+		return put(path, content.getBytes(UTF8));
+	}
+
+	/**
+	 * @returns the sources in the order they were first put
+	 */
+	public synchronized List<File> list() {
+		return new ArrayList<File>(sources.keySet());
+	}
+
+	/**
+	 * Hands every source to found in turn, on this thread.
+	 */
+	public void discover(final ForkJoinPool pool, final Found found) {
+		for (File source : list())
+			found.found(source);
+	}
+
+	public synchronized ByteBuffer read(final File source) throws IOException {
+		byte[] content = sources.get(source);
+		if (null == content)
+			throw new IOException("no source " + source);
+		return ByteBuffer.wrap(content).asReadOnlyBuffer();
+	}
+
+	public synchronized long size(final File source) {
+		byte[] content = sources.get(source);
+		return null == content ? -1 : content.length;
+	}
+
+	public void close() {
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Map<File, byte[]> sources = new LinkedHashMap<File, byte[]>();
+}
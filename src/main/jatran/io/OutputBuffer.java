@@ -0,0 +1,59 @@
+package jatran.io;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * OutputBuffer: a translated file, rendered whole into memory before it is
+ * written out in one go. Unlike a ByteArrayOutputStream it takes no locks
+ * and hands its bytes out without copying them; it is reused from file to
+ * file through OutputFiles rather than made anew for each.
+ */
+public final class OutputBuffer extends OutputStream {
+	OutputBuffer(final int capacity) {
+		buf = new byte[capacity];
+	}
+
+	@Override public void write(final int b) {
+		if (count == buf.length)
+			grow(count + 1);
+		buf[count++] = (byte) b;
+	}
+
+	@Override public void write(final byte[] b, final int off, final int len) {
+		if (count + len > buf.length)
+			grow(count + len);
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	/**
+	 * @returns the number of bytes written so far
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @returns the bytes written so far, not copied
+	 */
+	ByteBuffer bytes() {
+		return ByteBuffer.wrap(buf, 0, count);
+	}
+
+	int capacity() {
+		return buf.length;
+	}
+
+	void reset() {
+		count = 0;
+	}
+
+	private void grow(final int needed) {
+		buf = Arrays.copyOf(buf, Math.max(needed, 2 * buf.length));
+	}
+
+	private byte[] buf;
+	private int count;
+}
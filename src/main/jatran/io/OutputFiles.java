@@ -0,0 +1,315 @@
+package jatran.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * OutputFiles: writes translated files to a Sink, each rendered whole into
+ * an OutputBuffer first and then handed to the sink in one piece.
+ *
+ * That holds the whole file in memory, which for a huge source is as much
+ * again as its tree. A file whose source is larger than the streaming
+ * threshold, STREAMED by default, is instead streamed to a sink that can
+ * take it: written out as it is printed, through the printer's own buffer,
+ * so what it holds no longer grows with the file.
+ *
+ * Files are written on the thread that hands them in, or with write-behind
+ * on a writer thread of their own, so that translating goes on while they
+ * are written; up to QUEUED files then wait to be written before write()
+ * blocks. Either way a Listener hears how each write went, and close()
+ * returns once every file handed in has been written.
+ *
+ * Buffers come from a pool shared by every thread and go back to it once
+ * written, so a batch allocates about as many as files are in flight at
+ * once. Buffers grown past RETAINED bytes for a big file are left to the
+ * garbage collector instead.
+ */
+public final class OutputFiles implements Closeable {
+	/**
+	 * The number of files write-behind lets wait to be written. =64
+	 */
+	public static final int QUEUED = 64;
+
+	/**
+	 * The largest buffer kept for reuse. =1MB
+	 */
+	public static final int RETAINED = 1 << 20;
+
+	/**
+	 * The default size of source past which its file is streamed; a buffer
+	 * for it would not be kept for reuse anyway. =RETAINED
+	 */
+	public static final long STREAMED = RETAINED;
+
+	/**
+	 * Hears how the writing of each file went, on the thread that wrote it.
+	 */
+	public interface Listener {
+		void written(String path, long bytes, long nanos);
+
+		void failed(String path, IOException e);
+	}
+
+	/**
+	 * Prints a file to be streamed.
+	 */
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * @param sink where files are written
+	 * @param writeBehind whether files are written on a writer thread
+	 */
+	public OutputFiles(final Sink sink, final boolean writeBehind) {
+		this(sink, writeBehind, STREAMED);
+	}
+
+	/**
+	 * @param streamed the size of source past which its file is streamed
+	 */
+	public OutputFiles(final Sink sink, final boolean writeBehind, final long streamed) {
+		this.sink = sink;
+		this.streamed = streamed;
+		if (writeBehind) {
+			queue = new ArrayBlockingQueue<Write>(QUEUED);
+			writer = new Thread("jatran-writer") {
+				@Override public void run() {
+					drain();
+				}
+			};
+			writer.setDaemon(true);
+			writer.start();
+		} else {
+			queue = null;
+			writer = null;
+		}
+	}
+
+	/**
+	 * @returns the sink files are written to
+	 */
+	public Sink sink() {
+		return sink;
+	}
+
+	/**
+	 * @returns an empty buffer to render a file into, for write() or release()
+	 */
+	public OutputBuffer buffer() {
+		OutputBuffer buffer = pool.poll();
+		return null == buffer ? new OutputBuffer(INITIAL) : buffer;
+	}
+
+	/**
+	 * Returns a buffer that is not going to be written to the pool.
+	 */
+	public void release(final OutputBuffer buffer) {
+		if (buffer.capacity() > RETAINED)
+			return;
+		buffer.reset();
+		pool.offer(buffer);
+	}
+
+	/**
+	 * Writes the buffer to the sink as the file at path, replacing it, and
+	 * releases the buffer; with write-behind, once a writer thread gets to it.
+	 */
+	public void write(final String path, final OutputBuffer buffer, final Listener listener)
+			throws InterruptedException {
+		if (null == writer) {
+			write(new Write(path, buffer, listener));
+			return;
+		}
+		if (closed)
+			throw new IllegalStateException("closed");
+		queue.put(new Write(path, buffer, listener));
+	}
+
+	/**
+	 * @returns whether the file printed from a source this many bytes long
+	 * is to be streamed rather than rendered into a buffer
+	 */
+	public boolean streams(final long sourceBytes) {
+		return sourceBytes > streamed && sink.streams();
+	}
+
+	/**
+	 * Writes the file at path to the sink while content prints it, on this
+	 * thread whether or not files are written behind. The Listener hears of
+	 * the time spent in the sink only. If printing fails, what was written
+	 * of the file is deleted and the failure thrown on.
+	 */
+	public void stream(final String path, final Content content, final Listener listener) throws IOException {
+		Streamed out = null;
+		IOException failure = null;
+		boolean printed = false;
+
+		try {
+			out = new Streamed(sink.open(path));
+			try {
+				content.writeTo(out);
+				printed = true;
+			} finally {
+				out.close();
+			}
+			failure = out.failure;
+		} catch (IOException e) {
+			if (null == failure)
+				failure = e;
+		} finally {
+			if (!printed || null != failure)
+				discard(path);
+		}
+
+		if (null == failure)
+			listener.written(path, out.bytes, out.nanos);
+		else
+			listener.failed(path, failure);
+	}
+
+	/**
+	 * Waits for every file handed in to be written and stops the writer
+	 * thread, if any; rethrows the first exception a Listener threw there.
+	 */
+	public void close() {
+		if (null == writer || closed)
+			return;
+		closed = true;
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(END);
+				writer.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (null != listenerFailure)
+			throw listenerFailure;
+	}
+
+	private void drain() {
+		try {
+			for (Write w = queue.take(); w != END; w = queue.take()) {
+				try {
+					write(w);
+				} catch (RuntimeException e) {
+					// a listener failed; the files after it are written all the same
+					if (null == listenerFailure)
+						listenerFailure = e;
+				}
+			}
+		} catch (InterruptedException e) {
+			// only close() stops the writer
+		}
+	}
+
+	private void write(final Write w) {
+		long start = System.nanoTime();
+		IOException failure = null;
+		int size = w.buffer.size();
+
+		try {
+			sink.write(w.path, w.buffer.bytes());
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			release(w.buffer);
+		}
+
+		long took = System.nanoTime() - start;
+		if (null == failure)
+			w.listener.written(w.path, size, took);
+		else
+			w.listener.failed(w.path, failure);
+	}
+
+	/**
+	 * Deletes what was written of a file that failed, as best it can.
+	 */
+	private void discard(final String path) {
+		try {
+			sink.delete(path);
+		} catch (IOException e) {
+			// the failure that got it here is the one to report
+		}
+	}
+
+	/**
+	 * A file being streamed: counts the bytes and the time spent writing
+	 * them, and keeps the first failure, which a printer does not pass on.
+	 */
+	private static final class Streamed extends OutputStream {
+		Streamed(final OutputStream out) {
+			this.out = out;
+		}
+
+		@Override public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override public void write(final byte[] b, final int off, final int len) throws IOException {
+			long start = System.nanoTime();
+			try {
+				out.write(b, off, len);
+				bytes += len;
+			} catch (IOException e) {
+				if (null == failure)
+					failure = e;
+				throw e;
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+
+		@Override public void close() throws IOException {
+			long start = System.nanoTime();
+			try {
+				out.close();
+			} finally {
+				nanos += System.nanoTime() - start;
+			}
+		}
+
+		final OutputStream out;
+		long bytes;
+		long nanos;
+		IOException failure;
+	}
+
+	private static final class Write {
+		Write(final String path, final OutputBuffer buffer, final Listener listener) {
+			this.path = path;
+			this.buffer = buffer;
+			this.listener = listener;
+		}
+
+		final String path;
+		final OutputBuffer buffer;
+		final Listener listener;
+	}
+
+	private static final int INITIAL = 16384;
+
+	/**
+	 * Tells the writer thread that close() was called.
+	 */
+	private static final Write END = new Write(null, null, null);
+
+	private final Sink sink;
+	private final long streamed;
+	private final ConcurrentLinkedQueue<OutputBuffer> pool = new ConcurrentLinkedQueue<OutputBuffer>();
+	private final BlockingQueue<Write> queue;
+	private final Thread writer;
+	private volatile boolean closed;
+	private RuntimeException listenerFailure;
+}
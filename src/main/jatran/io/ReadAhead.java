@@ -0,0 +1,355 @@
+package jatran.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * ReadAhead: reads and decodes sources on a thread of its own, in the order
+ * they are offered, while the threads translating them parse and print the
+ * ones before; a source is then taken already decoded.
+ *
+ * At most depth sources wait to be taken at once, holding no more than
+ * capacity bytes between them, the first one aside. A source that is taken
+ * before the reader gets to it is read on the taking thread instead, so no
+ * thread waits on a source the reader has not started on; the wait for one
+ * it is reading, or the read in its place, is a stall. With a depth of 0
+ * there is no reader thread and every source is read when taken.
+ *
+ * Sources are decoded into char arrays from a pool shared by every thread,
+ * which go back to it once released, so a batch allocates about as many as
+ * sources are in flight at once. Arrays grown past RETAINED chars for a big
+ * source are left to the garbage collector instead.
+ */
+public final class ReadAhead implements Closeable {
+	/**
+	 * The largest char array kept for reuse. =1M chars
+	 */
+	public static final int RETAINED = 1 << 20;
+
+	/**
+	 * A source read and decoded, to be released once parsed.
+	 */
+	public static final class Input {
+		Input(final File source, final ByteBuffer bytes, final char[] chars, final int length) {
+			this.source = source;
+			this.bytes = bytes;
+			this.chars = chars;
+			this.length = length;
+		}
+
+		public final File source;
+
+		/**
+		 * The content as read, its position left alone by decoding.
+		 */
+		public final ByteBuffer bytes;
+
+		/**
+		 * The decoded content: the first length chars.
+		 */
+		public final char[] chars;
+		public final int length;
+
+		/**
+		 * @returns the time the taking thread stalled on this source, or 0 if
+		 * it was read ahead of it
+		 */
+		public long stallNanos() {
+			return stallNanos;
+		}
+
+		/**
+		 * @returns the heap this source holds while waiting to be taken; a
+		 * mapped file only holds its chars
+		 */
+		long size() {
+			return (bytes.isDirect() ? 0 : bytes.capacity()) + 2L * chars.length;
+		}
+
+		long stallNanos;
+	}
+
+	/**
+	 * @param depth the number of sources read ahead of those taken; 0 reads
+	 * each when taken
+	 * @param capacity the bytes the sources read ahead may hold in all
+	 */
+	public ReadAhead(final Sources sources, final Charset charset, final int depth, final long capacity) {
+		this.sources = sources;
+		this.charset = charset;
+		this.depth = depth;
+		this.capacity = capacity;
+
+		if (depth > 0) {
+			reader = new Thread("jatran-reader") {
+				@Override public void run() {
+					read();
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+		} else {
+			reader = null;
+		}
+	}
+
+	/**
+	 * Lines a source up to be read ahead, after those offered before it.
+	 * Offering a source again before the reader starts on it lines it up
+	 * anew, behind those offered since; once it is read or being read, it
+	 * is left as it is.
+	 */
+	public synchronized void offer(final File source) {
+		if (null == reader)
+			return;
+		Slot slot = slots.get(source);
+		if (null == slot) {
+			slot = new Slot();
+			slots.put(source, slot);
+		} else if (slot.state != PENDING) {
+			return;
+		}
+		++slot.queued;
+		pending.add(source);
+		notifyAll();
+	}
+
+	/**
+	 * @returns the source, read and decoded ahead if the reader got to it,
+	 * or else read and decoded on this thread
+	 */
+	public Input take(final File source) throws IOException {
+		long start = System.nanoTime();
+		Slot slot;
+		boolean waited = false;
+		boolean interrupted = false;
+
+		synchronized (this) {
+			slot = slots.get(source);
+			if (null != slot && slot.state == LOADING) {
+				waited = true;
+				while (slot.state == LOADING)
+					interrupted |= await();
+			}
+			if (null != slot)
+				slots.remove(source);
+			if (null != slot && slot.state == READY) {
+				--ready;
+				if (null != slot.input)
+					buffered -= slot.input.size();
+				notifyAll();
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		Input input;
+		if (null != slot && slot.state == READY) {
+			rethrow(slot.failure);
+			input = slot.input;
+		} else {
+			waited = true;
+			input = load(source, decoder(charset));
+		}
+
+		if (waited) {
+			input.stallNanos = System.nanoTime() - start;
+			synchronized (this) {
+				++stalls;
+			}
+		}
+		return input;
+	}
+
+	/**
+	 * Returns the chars of a source that has been parsed to the pool.
+	 */
+	public void release(final Input input) {
+		if (input.chars.length <= RETAINED)
+			pool.offer(input.chars);
+	}
+
+	/**
+	 * @returns the number of sources taken so far that had not been read ahead
+	 */
+	public synchronized long stalls() {
+		return stalls;
+	}
+
+	/**
+	 * Stops the reader thread, if any, dropping the sources it read ahead
+	 * that were never taken.
+	 */
+	public void close() {
+		if (null == reader)
+			return;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				reader.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void read() {
+		CharsetDecoder decoder = decoder(charset);
+
+		while (true) {
+			File source;
+			Slot slot;
+			synchronized (this) {
+				while (!closed && (pending.isEmpty() || ready >= depth || (ready > 0 && buffered >= capacity)))
+					await();
+				if (closed)
+					return;
+
+				source = pending.poll();
+				slot = slots.get(source);
+				// taken before the reader got to it
+				if (null == slot || slot.state != PENDING)
+					continue;
+				// lined up again further on
+				if (--slot.queued > 0)
+					continue;
+				slot.state = LOADING;
+			}
+
+			Input input = null;
+			Throwable failure = null;
+			try {
+				input = load(source, decoder);
+			} catch (Throwable e) {
+				failure = e;
+			}
+
+			synchronized (this) {
+				slot.input = input;
+				slot.failure = failure;
+				slot.state = READY;
+				++ready;
+				if (null != input)
+					buffered += input.size();
+				notifyAll();
+			}
+		}
+	}
+
+	private Input load(final File source, final CharsetDecoder decoder) throws IOException {
+		ByteBuffer bytes = sources.read(source);
+		ByteBuffer in = bytes.duplicate();
+
+		char[] chars = pool.poll();
+		if (null == chars)
+			chars = new char[Math.max(INITIAL, in.remaining())];
+		CharBuffer out = CharBuffer.wrap(chars);
+
+		decoder.reset();
+		CoderResult result;
+		do {
+			result = decoder.decode(in, out, true);
+			if (result.isOverflow())
+				out = grow(out, in.remaining());
+		} while (result.isOverflow());
+		do {
+			result = decoder.flush(out);
+			if (result.isOverflow())
+				out = grow(out, 0);
+		} while (result.isOverflow());
+
+		return new Input(source, bytes, out.array(), out.position());
+	}
+
+	private static CharBuffer grow(final CharBuffer out, final int remaining) {
+		int position = out.position();
+		char[] chars = Arrays.copyOf(out.array(), Math.max(2 * out.capacity(), position + remaining + 16));
+		CharBuffer grown = CharBuffer.wrap(chars);
+		grown.position(position);
+		return grown;
+	}
+
+	/**
+	 * @returns a decoder that replaces malformed input, like a Reader does
+	 */
+	private static CharsetDecoder decoder(final Charset charset) {
+		return charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Waits for a change, carrying on if interrupted: the reader only stops
+	 * on close(), and always finishes the source it is reading.
+	 * @returns whether the thread was interrupted
+	 */
+	private boolean await() {
+		try {
+			wait();
+			return false;
+		} catch (InterruptedException e) {
+			return true;
+		}
+	}
+
+	private static void rethrow(final Throwable failure) throws IOException {
+		if (null == failure)
+			return;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		throw (Error) failure;
+	}
+
+	/**
+	 * Where an offered source is: waiting for the reader, being read by it,
+	 * or read, if not successfully.
+	 */
+	private static final class Slot {
+		int state = PENDING;
+		int queued;
+		Input input;
+		Throwable failure;
+	}
+
+	private static final int PENDING = 0;
+	private static final int LOADING = 1;
+	private static final int READY = 2;
+
+	private static final int INITIAL = 16384;
+
+	private final Sources sources;
+	private final Charset charset;
+	private final int depth;
+	private final long capacity;
+	private final Thread reader;
+
+	private final ConcurrentLinkedQueue<char[]> pool = new ConcurrentLinkedQueue<char[]>();
+	private final ArrayDeque<File> pending = new ArrayDeque<File>();
+	private final Map<File, Slot> slots = new HashMap<File, Slot>();
+	private int ready;
+	private long buffered;
+	private long stalls;
+	private boolean closed;
+}
@@ -0,0 +1,43 @@
+package jatran.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Sink: where translated files go, be it a folder, an archive or memory.
+ * Files are named by paths relative to the sink, '/' separated, such as
+ * a/b/C.scala.
+ */
+public interface Sink extends Closeable {
+	/**
+	 * Writes the remaining bytes as the file at path, replacing any file
+	 * there; may be called from several threads at once.
+	 */
+	void write(String path, ByteBuffer bytes) throws IOException;
+
+	/**
+	 * @returns whether there is a file at path, written by this run or
+	 * one before it
+	 */
+	boolean exists(String path);
+
+	/**
+	 * @returns whether open() writes a file out as it comes, rather than the
+	 * sink holding it whole in memory anyway
+	 */
+	boolean streams();
+
+	/**
+	 * Opens the file at path to be written, replacing any file there; it is
+	 * complete once the stream is closed. Only a sink that streams() can.
+	 */
+	OutputStream open(String path) throws IOException;
+
+	/**
+	 * Removes the file at path, if there is one.
+	 * @returns whether there was
+	 */
+	boolean delete(String path) throws IOException;
+}
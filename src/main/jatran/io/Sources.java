@@ -0,0 +1,47 @@
+package jatran.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Sources: where the java sources of a run come from, be it a folder, an
+ * archive or memory. Each source is named by a File, which need not exist
+ * on disk; it is only read through read().
+ */
+public interface Sources extends Closeable {
+	/**
+	 * Hears of each source as it is discovered.
+	 */
+	interface Found {
+		void found(File source);
+	}
+
+	/**
+	 * @returns every java source, in the order they are to be translated
+	 */
+	List<File> list() throws IOException;
+
+	/**
+	 * Hands every java source to found as soon as it is discovered, for the
+	 * caller to start on it while discovery goes on, and returns once all
+	 * have been. Discovery may run on the threads of pool, handing several
+	 * sources to found at once, in no particular order.
+	 */
+	void discover(ForkJoinPool pool, Found found) throws IOException;
+
+	/**
+	 * @returns the content of a source from list(); may be called from
+	 * several threads at once
+	 */
+	ByteBuffer read(File source) throws IOException;
+
+	/**
+	 * @returns the size in bytes of a source from list(), as far as can be
+	 * told without reading it, or -1
+	 */
+	long size(File source);
+}
@@ -0,0 +1,169 @@
+package jatran.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher: watches the java sources under a folder, that a Globs takes in,
+ * for changes, through the file system's WatchService.
+ *
+ * Folders are watched one by one, those created later included. Changes
+ * come in bursts, an editor saving a file or a checkout touching hundreds,
+ * so they are gathered until the tree has been quiet for the debounce time
+ * or for at most ten times that, and then handed on together: the sources
+ * created or modified, and the files and folders removed, each once.
+ */
+public final class Watcher implements Closeable {
+	/**
+	 * The quiet time that ends a burst of changes, in milliseconds. =100
+	 */
+	public static final long DEBOUNCE = 100;
+
+	/**
+	 * Hears of each burst of changes, on the watching thread.
+	 */
+	public interface Changes {
+		/**
+		 * @param touched the sources created or modified
+		 * @param removed the files and folders removed, sources or not
+		 */
+		void changed(List<File> touched, List<File> removed);
+
+		/**
+		 * Changes came too fast for the file system to tell which; any
+		 * source may have been touched or removed.
+		 */
+		void lost();
+	}
+
+	/**
+	 * Starts watching, so that changes made from now on are heard by watch().
+	 */
+	public Watcher(final File root, final Globs globs, final long debounce) throws IOException {
+		if (!root.isDirectory())
+			throw new IOException(root + " is not a folder");
+		this.root = root.toPath();
+		this.globs = globs;
+		this.debounce = debounce;
+		service = this.root.getFileSystem().newWatchService();
+		register(root, null);
+	}
+
+	/**
+	 * Hands each burst of changes to changes until the thread is interrupted
+	 * or the watcher closed.
+	 */
+	public void watch(final Changes changes) throws IOException, InterruptedException {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10 * debounce);
+				Set<Path> changed = new LinkedHashSet<Path>();
+				boolean lost = false;
+				while (null != key) {
+					lost |= collect(key, changed);
+					key = System.nanoTime() < until ? service.poll(debounce, TimeUnit.MILLISECONDS) : null;
+				}
+
+				if (lost) {
+					changes.lost();
+					continue;
+				}
+
+				List<File> touched = new ArrayList<File>();
+				List<File> removed = new ArrayList<File>();
+				for (Path path : changed) {
+					File file = path.toFile();
+					if (file.isFile()) {
+						if (accepts(path))
+							touched.add(file);
+					} else if (!file.exists()) {
+						removed.add(file);
+					}
+				}
+				if (!touched.isEmpty() || !removed.isEmpty())
+					changes.changed(touched, removed);
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		}
+	}
+
+	public void close() throws IOException {
+		service.close();
+	}
+
+	/**
+	 * Adds the paths the events of key are about to changed, watching the
+	 * folders created among them.
+	 * @returns whether events were lost
+	 */
+	private boolean collect(final WatchKey key, final Set<Path> changed) throws IOException {
+		Path folder = (Path) key.watchable();
+		boolean lost = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				lost = true;
+				continue;
+			}
+			Path path = folder.resolve((Path) event.context());
+			changed.add(path);
+			if (event.kind() == ENTRY_CREATE && path.toFile().isDirectory())
+				register(path.toFile(), changed);
+		}
+		key.reset();
+		return lost;
+	}
+
+	/**
+	 * Watches a folder and those under it that are not skipped; with
+	 * changed, adds the files in them to it, as they may have been there
+	 * before the folder was watched.
+	 */
+	private void register(final File folder, final Set<Path> changed) throws IOException {
+		Path path = folder.toPath();
+		if (!path.equals(root) && globs.skips(relative(path)))
+			return;
+		path.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+
+		File[] children = folder.listFiles();
+		if (null == children)
+			return;
+		for (File child : children) {
+			if (child.isDirectory())
+				register(child, changed);
+			else if (null != changed)
+				changed.add(child.toPath());
+		}
+	}
+
+	private boolean accepts(final Path path) {
+		String relative = relative(path);
+		return relative.endsWith(".java") && globs.matches(relative);
+	}
+
+	private String relative(final Path path) {
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+
+	private final Path root;
+	private final Globs globs;
+	private final long debounce;
+	private final WatchService service;
+}
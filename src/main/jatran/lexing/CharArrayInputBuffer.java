@@ -0,0 +1,165 @@
+package jatran.lexing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+import antlr.CharScanner;
+import antlr.InputBuffer;
+
+/**
+ * An InputBuffer over a char array holding the whole source.
+ *
+ * ANTLR's CharBuffer pulls characters out of a Reader into a queue one LA()
+ * at a time. Here the file is decoded once, up front, and lookahead, marking
+ * and rewinding are plain index arithmetic on the array; nothing is copied or
+ * refilled while lexing.
+ */
+public class CharArrayInputBuffer extends InputBuffer {
+	/**
+	 * Files at least this big are memory mapped instead of read into the heap.
+	 */
+	public static final int MAP_THRESHOLD = 256 * 1024;
+
+	public CharArrayInputBuffer(final char[] chars, final int length) {
+		reset(chars, length);
+	}
+
+	public CharArrayInputBuffer(final String s) {
+		this(s.toCharArray(), s.length());
+	}
+
+	/**
+	 * Reads and decodes the whole file in one go.
+	 * @param charset the encoding of the file; malformed input is replaced, like a Reader does
+	 */
+	public static CharArrayInputBuffer read(final File file, final Charset charset) throws IOException {
+		return decode(load(file), charset);
+	}
+
+	/**
+	 * Reads the whole file through its channel, memory mapping it if it is big.
+	 */
+	public static ByteBuffer load(final File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+
+			if (size >= MAP_THRESHOLD)
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			ByteBuffer bytes = ByteBuffer.allocate((int) size);
+			while (bytes.hasRemaining() && channel.read(bytes) != -1)
+				;
+			bytes.flip();
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes the remaining bytes into a new buffer.
+	 * @param charset the encoding of the bytes; malformed input is replaced, like a Reader does
+	 */
+	public static CharArrayInputBuffer decode(final ByteBuffer bytes, final Charset charset) {
+		int size = bytes.remaining();
+		CharBuffer chars;
+
+		try {
+			chars = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(bytes);
+		} catch (CharacterCodingException e) {
+			// cannot happen when errors are replaced
+			throw new IllegalStateException(e);
+		}
+
+		CharArrayInputBuffer buffer = new CharArrayInputBuffer(chars.array(), chars.limit());
+		buffer.bytesRead = size;
+		return buffer;
+	}
+
+	/**
+	 * Points the buffer at new content and rewinds it to the start.
+	 */
+	public void reset(final char[] chars, final int length) {
+		this.chars = chars;
+		this.length = length;
+		this.bytesRead = 0;
+		reset();
+	}
+
+	@Override public void reset() {
+		super.reset();
+		pos = 0;
+		start = 0;
+	}
+
+	/**
+	 * @returns the number of bytes decoded into this buffer; 0 if it was built from chars
+	 */
+	public long bytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @returns the number of chars in the source
+	 */
+	public int length() {
+		return length;
+	}
+
+	@Override public char LA(final int i) {
+		int at = pos + i - 1;
+		return at < length ? chars[at] : CharScanner.EOF_CHAR;
+	}
+
+	@Override public void consume() {
+		++pos;
+	}
+
+	@Override public void fill(final int amount) {}
+
+	@Override public int mark() {
+		if (0 == nMarkers++)
+			start = pos;
+		return pos;
+	}
+
+	@Override public void rewind(final int mark) {
+		pos = mark;
+		--nMarkers;
+	}
+
+	@Override public void commit() {
+		--nMarkers;
+	}
+
+	@Override public boolean isMarked() {
+		return 0 != nMarkers;
+	}
+
+	@Override public String getLAChars() {
+		return new String(chars, pos, length - pos);
+	}
+
+	@Override public String getMarkedChars() {
+		return isMarked() ? new String(chars, start, pos - start) : "";
+	}
+
+	private char[] chars;
+	private int length;
+	private int pos;
+	private int start;
+	private long bytesRead;
+}
@@ -0,0 +1,213 @@
+package jatran.lexing;
+
+import antlr.Token;
+import antlr.collections.AST;
+import antlr.collections.ASTEnumeration;
+import antlr.collections.impl.ASTEnumerator;
+import antlr.collections.impl.Vector;
+
+/**
+ * CompactAST: a view of one node of a CompactASTFactory tree. It holds
+ * nothing but the tree and the node's index; reads and writes go to the
+ * tree's arrays. The structural comparisons and string forms behave like
+ * those of antlr.BaseAST; equals(Object) compares node identity.
+ */
+final class CompactAST implements AST {
+	CompactAST(final CompactASTFactory tree, final int node) {
+		this.tree = tree;
+		this.node = node;
+	}
+
+	public int getType() {
+		return tree.types[node];
+	}
+
+	public void setType(final int type) {
+		tree.types[node] = type;
+	}
+
+	public String getText() {
+		return tree.text(node);
+	}
+
+	public void setText(final String text) {
+		tree.setText(node, text);
+	}
+
+	public AST getFirstChild() {
+		return tree.view(tree.firstChild[node]);
+	}
+
+	public void setFirstChild(final AST c) {
+		tree.firstChild[node] = tree.index(c);
+	}
+
+	public AST getNextSibling() {
+		return tree.view(tree.nextSibling[node]);
+	}
+
+	public void setNextSibling(final AST n) {
+		tree.nextSibling[node] = tree.index(n);
+	}
+
+	public void initialize(final int t, final String txt) {
+		setType(t);
+		setText(txt);
+	}
+
+	public void initialize(final AST t) {
+		setType(t.getType());
+		setText(t.getText());
+	}
+
+	public void initialize(final Token t) {
+		setType(t.getType());
+		setText(t.getText());
+	}
+
+	/**
+	 * Appends node, and the siblings after it, to the children.
+	 */
+	public void addChild(final AST node) {
+		if (node == null)
+			return;
+
+		int c = tree.firstChild[this.node];
+		if (c == CompactASTFactory.NONE) {
+			setFirstChild(node);
+			return;
+		}
+		while (tree.nextSibling[c] != CompactASTFactory.NONE)
+			c = tree.nextSibling[c];
+		tree.nextSibling[c] = tree.index(node);
+	}
+
+	public int getNumberOfChildren() {
+		int n = 0;
+		for (int c = tree.firstChild[node]; c != CompactASTFactory.NONE; c = tree.nextSibling[c])
+			++n;
+		return n;
+	}
+
+	/**
+	 * Not tracked; 0, like antlr.BaseAST.
+	 */
+	public int getLine() {
+		return 0;
+	}
+
+	public int getColumn() {
+		return 0;
+	}
+
+	/**
+	 * @returns true iff t has the same type and text
+	 */
+	public boolean equals(final AST t) {
+		if (t == null)
+			return false;
+		String a = getText();
+		String b = t.getText();
+		return getType() == t.getType() && (a == null ? b == null : a.equals(b));
+	}
+
+	public boolean equalsList(AST t) {
+		AST sibling;
+
+		if (t == null)
+			return false;
+
+		for (sibling = this; sibling != null && t != null; sibling = sibling.getNextSibling(), t = t.getNextSibling()) {
+			if (!sibling.equals(t))
+				return false;
+			if (sibling.getFirstChild() != null) {
+				if (!sibling.getFirstChild().equalsList(t.getFirstChild()))
+					return false;
+			} else if (t.getFirstChild() != null) {
+				return false;
+			}
+		}
+		return sibling == null && t == null;
+	}
+
+	public boolean equalsListPartial(AST sub) {
+		AST sibling;
+
+		if (sub == null)
+			return true;
+
+		for (sibling = this; sibling != null && sub != null; sibling = sibling.getNextSibling(), sub = sub.getNextSibling()) {
+			if (!sibling.equals(sub))
+				return false;
+			if (sibling.getFirstChild() != null && !sibling.getFirstChild().equalsListPartial(sub.getFirstChild()))
+				return false;
+		}
+		return sibling != null || sub == null;
+	}
+
+	public boolean equalsTree(final AST t) {
+		if (!equals(t))
+			return false;
+		if (getFirstChild() != null)
+			return getFirstChild().equalsList(t.getFirstChild());
+		return t.getFirstChild() == null;
+	}
+
+	public boolean equalsTreePartial(final AST sub) {
+		if (sub == null)
+			return true;
+		if (!equals(sub))
+			return false;
+		return getFirstChild() == null || getFirstChild().equalsListPartial(sub.getFirstChild());
+	}
+
+	public ASTEnumeration findAll(final AST target) {
+		return target == null ? null : new ASTEnumerator(find(target, false, new Vector(10)));
+	}
+
+	public ASTEnumeration findAllPartial(final AST sub) {
+		return sub == null ? null : new ASTEnumerator(find(sub, true, new Vector(10)));
+	}
+
+	/**
+	 * Collects the matches among this node, its siblings and their subtrees.
+	 */
+	private Vector find(final AST target, final boolean partial, final Vector found) {
+		for (AST sibling = this; sibling != null; sibling = sibling.getNextSibling()) {
+			if (partial ? sibling.equalsTreePartial(target) : sibling.equalsTree(target))
+				found.appendElement(sibling);
+			if (sibling.getFirstChild() != null)
+				((CompactAST) sibling.getFirstChild()).find(target, partial, found);
+		}
+		return found;
+	}
+
+	@Override public boolean equals(final Object o) {
+		return o instanceof CompactAST && ((CompactAST) o).tree == tree && ((CompactAST) o).node == node;
+	}
+
+	@Override public int hashCode() {
+		return System.identityHashCode(tree) * 31 + node;
+	}
+
+	@Override public String toString() {
+		return getText();
+	}
+
+	public String toStringList() {
+		StringBuilder sb = new StringBuilder();
+		for (AST sibling = this; sibling != null; sibling = sibling.getNextSibling())
+			sb.append(sibling.toStringTree());
+		return sb.toString();
+	}
+
+	public String toStringTree() {
+		AST c = getFirstChild();
+		if (c == null)
+			return " " + this;
+		return " ( " + this + c.toStringList() + " )";
+	}
+
+	final CompactASTFactory tree;
+	final int node;
+}
@@ -0,0 +1,185 @@
+package jatran.lexing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import antlr.ASTFactory;
+import antlr.ASTPair;
+import antlr.collections.AST;
+
+/**
+ * CompactASTFactory: an ASTFactory whose trees live in parallel int arrays
+ * rather than in a CommonAST object per node.
+ *
+ * Node i of the tree has type types[i], its first child at firstChild[i] and
+ * its next sibling at nextSibling[i], NONE standing for null. Its text is
+ * texts[i], an index into a table holding each distinct text once, so the
+ * many repeats of an identifier or a keyword in a file share one String
+ * and getText() never builds one.
+ *
+ * The AST objects handed out are CompactAST views of an index, made the
+ * first time a node is asked for and then kept, so walking a tree again
+ * does not allocate. forgetViews() drops them once the parser is done, so a
+ * parsed tree held for printing is a handful of arrays, and a walk over it
+ * reads them in the order the parser wrote them. Views made before and
+ * after forgetViews() are equal but not the same object. A factory builds
+ * one tree; it is not thread safe.
+ */
+public class CompactASTFactory extends ASTFactory {
+	public static final int NONE = -1;
+
+	public CompactASTFactory() {
+		this(256);
+	}
+
+	/**
+	 * @param capacity the number of nodes to make room for up front
+	 */
+	public CompactASTFactory(final int capacity) {
+		int n = Math.max(capacity, 16);
+		types = new int[n];
+		firstChild = new int[n];
+		nextSibling = new int[n];
+		texts = new int[n];
+		strings = new String[Math.max(n / 4, 16)];
+	}
+
+	/**
+	 * Every create and dup of ASTFactory comes here for its node, then
+	 * initializes it.
+	 */
+	@Override protected AST create(final Class c) {
+		if (size == types.length) {
+			int n = 2 * size;
+			types = Arrays.copyOf(types, n);
+			firstChild = Arrays.copyOf(firstChild, n);
+			nextSibling = Arrays.copyOf(nextSibling, n);
+			texts = Arrays.copyOf(texts, n);
+		}
+
+		firstChild[size] = NONE;
+		nextSibling[size] = NONE;
+		texts[size] = NONE;
+		return view(size++);
+	}
+
+	/**
+	 * As ASTFactory's, but walking to the last child on the arrays rather
+	 * than through a view per sibling; the parser does this for every node.
+	 */
+	@Override public void addASTChild(final ASTPair currentAST, final AST child) {
+		if (child == null)
+			return;
+
+		if (currentAST.root == null)
+			currentAST.root = child;
+		else if (currentAST.child == null)
+			currentAST.root.setFirstChild(child);
+		else
+			currentAST.child.setNextSibling(child);
+
+		currentAST.child = last(child);
+	}
+
+	/**
+	 * As ASTFactory's, walking the arrays like addASTChild.
+	 */
+	@Override public void makeASTRoot(final ASTPair currentAST, final AST root) {
+		if (root == null)
+			return;
+
+		root.addChild(currentAST.root);
+		currentAST.child = last(currentAST.root);
+		currentAST.root = root;
+	}
+
+	/**
+	 * @returns the last of ast and the siblings after it
+	 */
+	private AST last(final AST ast) {
+		int i = index(ast);
+		if (i == NONE || nextSibling[i] == NONE)
+			return ast;
+
+		while (nextSibling[i] != NONE)
+			i = nextSibling[i];
+		return view(i);
+	}
+
+	/**
+	 * @returns the number of nodes made so far
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Lets go of the views made so far; the parser calls this when it has
+	 * built the tree and holds none of them any more.
+	 */
+	public void forgetViews() {
+		views = null;
+	}
+
+	/**
+	 * @returns the view of node i, or null for NONE
+	 */
+	AST view(final int i) {
+		if (i == NONE)
+			return null;
+
+		if (views == null)
+			views = new CompactAST[types.length];
+		else if (views.length < types.length)
+			views = Arrays.copyOf(views, types.length);
+
+		CompactAST v = views[i];
+		if (v == null)
+			views[i] = v = new CompactAST(this, i);
+		return v;
+	}
+
+	/**
+	 * @returns the index of ast, which must be a node of this factory, or NONE for null
+	 */
+	int index(final AST ast) {
+		if (ast == null)
+			return NONE;
+		if (!(ast instanceof CompactAST) || ((CompactAST) ast).tree != this)
+			throw new IllegalArgumentException("not a node of this tree: " + ast);
+		return ((CompactAST) ast).node;
+	}
+
+	String text(final int i) {
+		return texts[i] == NONE ? null : strings[texts[i]];
+	}
+
+	void setText(final int i, final String s) {
+		if (s == null) {
+			texts[i] = NONE;
+			return;
+		}
+
+		Integer id = ids.get(s);
+		if (id == null) {
+			if (distinct == strings.length)
+				strings = Arrays.copyOf(strings, 2 * distinct);
+			strings[distinct] = s;
+			id = distinct++;
+			ids.put(s, id);
+		}
+		texts[i] = id;
+	}
+
+	int[] types;
+	int[] firstChild;
+	int[] nextSibling;
+	private int[] texts;
+	private int size;
+	private CompactAST[] views;
+
+	private String[] strings;
+	private int distinct;
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+}
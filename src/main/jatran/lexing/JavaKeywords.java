@@ -0,0 +1,272 @@
+package jatran.lexing;
+
+/**
+ * JavaKeywords: recognizes the reserved words of Java 5 in the lexer's text
+ * buffer, without building a string or taking a lock.
+ *
+ * Every identifier the lexer scans is checked here. The words are told
+ * apart by length, then by first character, and only a word that gets that
+ * far is compared char by char, so most identifiers are ruled out with two
+ * switches. The words are the literals of java15.g; keep the two in step.
+ */
+final class JavaKeywords implements JavaTokenTypes {
+	private JavaKeywords() {
+	}
+
+	/**
+	 * @returns the token type of the keyword in buf[off, off + len), or
+	 * ident if it is not a keyword
+	 */
+	static int type(final char[] buf, final int off, final int len, final int ident) {
+		switch (len) {
+		case 2:
+			switch (buf[off]) {
+			case 'd':
+				if (rest(buf, off, "do"))
+					return LITERAL_do;
+				break;
+			case 'i':
+				if (rest(buf, off, "if"))
+					return LITERAL_if;
+				break;
+			}
+			break;
+		case 3:
+			switch (buf[off]) {
+			case 'f':
+				if (rest(buf, off, "for"))
+					return LITERAL_for;
+				break;
+			case 'i':
+				if (rest(buf, off, "int"))
+					return LITERAL_int;
+				break;
+			case 'n':
+				if (rest(buf, off, "new"))
+					return LITERAL_new;
+				break;
+			case 't':
+				if (rest(buf, off, "try"))
+					return LITERAL_try;
+				break;
+			}
+			break;
+		case 4:
+			switch (buf[off]) {
+			case 'b':
+				if (rest(buf, off, "byte"))
+					return LITERAL_byte;
+				break;
+			case 'c':
+				if (rest(buf, off, "case"))
+					return LITERAL_case;
+				if (rest(buf, off, "char"))
+					return LITERAL_char;
+				break;
+			case 'e':
+				if (rest(buf, off, "else"))
+					return LITERAL_else;
+				if (rest(buf, off, "enum"))
+					return LITERAL_enum;
+				break;
+			case 'l':
+				if (rest(buf, off, "long"))
+					return LITERAL_long;
+				break;
+			case 'n':
+				if (rest(buf, off, "null"))
+					return LITERAL_null;
+				break;
+			case 't':
+				if (rest(buf, off, "this"))
+					return LITERAL_this;
+				if (rest(buf, off, "true"))
+					return LITERAL_true;
+				break;
+			case 'v':
+				if (rest(buf, off, "void"))
+					return LITERAL_void;
+				break;
+			}
+			break;
+		case 5:
+			switch (buf[off]) {
+			case 'b':
+				if (rest(buf, off, "break"))
+					return LITERAL_break;
+				break;
+			case 'c':
+				if (rest(buf, off, "catch"))
+					return LITERAL_catch;
+				if (rest(buf, off, "class"))
+					return LITERAL_class;
+				break;
+			case 'f':
+				if (rest(buf, off, "false"))
+					return LITERAL_false;
+				if (rest(buf, off, "final"))
+					return FINAL;
+				if (rest(buf, off, "float"))
+					return LITERAL_float;
+				break;
+			case 's':
+				if (rest(buf, off, "short"))
+					return LITERAL_short;
+				if (rest(buf, off, "super"))
+					return LITERAL_super;
+				break;
+			case 't':
+				if (rest(buf, off, "throw"))
+					return LITERAL_throw;
+				break;
+			case 'w':
+				if (rest(buf, off, "while"))
+					return LITERAL_while;
+				break;
+			}
+			break;
+		case 6:
+			switch (buf[off]) {
+			case 'a':
+				if (rest(buf, off, "assert"))
+					return LITERAL_assert;
+				break;
+			case 'd':
+				if (rest(buf, off, "double"))
+					return LITERAL_double;
+				break;
+			case 'i':
+				if (rest(buf, off, "import"))
+					return LITERAL_import;
+				break;
+			case 'n':
+				if (rest(buf, off, "native"))
+					return LITERAL_native;
+				break;
+			case 'p':
+				if (rest(buf, off, "public"))
+					return LITERAL_public;
+				break;
+			case 'r':
+				if (rest(buf, off, "return"))
+					return LITERAL_return;
+				break;
+			case 's':
+				if (rest(buf, off, "static"))
+					return LITERAL_static;
+				if (rest(buf, off, "switch"))
+					return LITERAL_switch;
+				break;
+			case 't':
+				if (rest(buf, off, "throws"))
+					return LITERAL_throws;
+				break;
+			}
+			break;
+		case 7:
+			switch (buf[off]) {
+			case 'b':
+				if (rest(buf, off, "boolean"))
+					return LITERAL_boolean;
+				break;
+			case 'd':
+				if (rest(buf, off, "default"))
+					return LITERAL_default;
+				break;
+			case 'e':
+				if (rest(buf, off, "extends"))
+					return LITERAL_extends;
+				break;
+			case 'f':
+				if (rest(buf, off, "finally"))
+					return LITERAL_finally;
+				break;
+			case 'p':
+				if (rest(buf, off, "package"))
+					return LITERAL_package;
+				if (rest(buf, off, "private"))
+					return LITERAL_private;
+				break;
+			}
+			break;
+		case 8:
+			switch (buf[off]) {
+			case 'a':
+				if (rest(buf, off, "abstract"))
+					return ABSTRACT;
+				break;
+			case 'c':
+				if (rest(buf, off, "continue"))
+					return LITERAL_continue;
+				break;
+			case 's':
+				if (rest(buf, off, "strictfp"))
+					return STRICTFP;
+				break;
+			case 'v':
+				if (rest(buf, off, "volatile"))
+					return LITERAL_volatile;
+				break;
+			}
+			break;
+		case 9:
+			switch (buf[off]) {
+			case 'i':
+				if (rest(buf, off, "interface"))
+					return LITERAL_interface;
+				break;
+			case 'p':
+				if (rest(buf, off, "protected"))
+					return LITERAL_protected;
+				break;
+			case 't':
+				if (rest(buf, off, "transient"))
+					return LITERAL_transient;
+				break;
+			}
+			break;
+		case 10:
+			switch (buf[off]) {
+			case 'i':
+				if (rest(buf, off, "implements"))
+					return LITERAL_implements;
+				if (rest(buf, off, "instanceof"))
+					return LITERAL_instanceof;
+				break;
+			case 't':
+				if (rest(buf, off, "threadsafe"))
+					return LITERAL_threadsafe;
+				break;
+			}
+			break;
+		case 12:
+			switch (buf[off]) {
+			case 's':
+				if (rest(buf, off, "synchronized"))
+					return LITERAL_synchronized;
+				break;
+			}
+			break;
+		}
+		return ident;
+	}
+
+	/**
+	 * @returns true iff buf[off, off + len) is word
+	 */
+	static boolean is(final char[] buf, final int off, final int len, final String word) {
+		return len == word.length() && buf[off] == word.charAt(0) && rest(buf, off, word);
+	}
+
+	/**
+	 * @returns true iff the chars after the first in buf, from off, are the
+	 * rest of word; the caller has checked the length and the first char
+	 */
+	private static boolean rest(final char[] buf, final int off, final String word) {
+		for (int i = word.length() - 1; i > 0; --i) {
+			if (buf[off + i] != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+}
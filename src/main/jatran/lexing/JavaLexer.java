@@ -4,9 +4,7 @@ package jatran.lexing;
 
 import java.io.InputStream;
 import java.io.Reader;
-import java.util.Hashtable;
 
-import antlr.ANTLRHashString;
 import antlr.ByteBuffer;
 import antlr.CharBuffer;
 import antlr.CharStreamException;
@@ -38,6 +36,30 @@ public class JavaLexer extends antlr.CharScanner implements JavaTokenTypes, Toke
 	public void enableEnum(final boolean shouldEnable) { enumEnabled = shouldEnable; }
 	/** Query the "enum" keyword state */
 	public boolean isEnumEnabled() { return enumEnabled; }
+
+	/**
+	 * Points this lexer at new input, as if it had just been built on it,
+	 * so one lexer can scan many files. The keyword flags are kept.
+	 */
+	public void reset(final InputBuffer ib) {
+		setInputState(new LexerSharedInputState(ib));
+		resetText();
+		_returnToken = null;
+		commitToPath = false;
+		traceDepth = 0;
+	}
+
+	/**
+	 * Keywords are looked up with JavaKeywords rather than in the literals
+	 * table, which would take a lock and a hash per identifier.
+	 */
+	@Override public int testLiteralsTable(final int ttype) {
+		return JavaKeywords.type(text.getBuffer(), 0, text.length(), ttype);
+	}
+
+	@Override public int testLiteralsTable(final String s, final int ttype) {
+		return JavaKeywords.type(s.toCharArray(), 0, s.length(), ttype);
+	}
 public JavaLexer(final InputStream in) {
 	this(new ByteBuffer(in));
 }
@@ -51,59 +73,7 @@ public JavaLexer(final LexerSharedInputState state) {
 	super(state);
 	caseSensitiveLiterals = true;
 	setCaseSensitive(true);
-	literals = new Hashtable();
-	literals.put(new ANTLRHashString("byte", this), new Integer(80));
-	literals.put(new ANTLRHashString("public", this), new Integer(89));
-	literals.put(new ANTLRHashString("case", this), new Integer(123));
-	literals.put(new ANTLRHashString("short", this), new Integer(82));
-	literals.put(new ANTLRHashString("break", this), new Integer(116));
-	literals.put(new ANTLRHashString("while", this), new Integer(114));
-	literals.put(new ANTLRHashString("new", this), new Integer(159));
-	literals.put(new ANTLRHashString("instanceof", this), new Integer(146));
-	literals.put(new ANTLRHashString("implements", this), new Integer(107));
-	literals.put(new ANTLRHashString("synchronized", this), new Integer(94));
-	literals.put(new ANTLRHashString("float", this), new Integer(84));
-	literals.put(new ANTLRHashString("package", this), new Integer(62));
-	literals.put(new ANTLRHashString("return", this), new Integer(118));
-	literals.put(new ANTLRHashString("throw", this), new Integer(120));
-	literals.put(new ANTLRHashString("null", this), new Integer(158));
-	literals.put(new ANTLRHashString("threadsafe", this), new Integer(93));
-	literals.put(new ANTLRHashString("protected", this), new Integer(90));
-	literals.put(new ANTLRHashString("class", this), new Integer(102));
-	literals.put(new ANTLRHashString("throws", this), new Integer(109));
-	literals.put(new ANTLRHashString("do", this), new Integer(115));
-	literals.put(new ANTLRHashString("strictfp", this), new Integer(41));
-	literals.put(new ANTLRHashString("super", this), new Integer(72));
-	literals.put(new ANTLRHashString("transient", this), new Integer(91));
-	literals.put(new ANTLRHashString("native", this), new Integer(92));
-	literals.put(new ANTLRHashString("interface", this), new Integer(103));
-	literals.put(new ANTLRHashString("final", this), new Integer(39));
-	literals.put(new ANTLRHashString("if", this), new Integer(112));
-	literals.put(new ANTLRHashString("double", this), new Integer(86));
-	literals.put(new ANTLRHashString("volatile", this), new Integer(95));
-	literals.put(new ANTLRHashString("assert", this), new Integer(121));
-	literals.put(new ANTLRHashString("catch", this), new Integer(126));
-	literals.put(new ANTLRHashString("try", this), new Integer(124));
-	literals.put(new ANTLRHashString("enum", this), new Integer(104));
-	literals.put(new ANTLRHashString("int", this), new Integer(83));
-	literals.put(new ANTLRHashString("for", this), new Integer(122));
-	literals.put(new ANTLRHashString("extends", this), new Integer(71));
-	literals.put(new ANTLRHashString("boolean", this), new Integer(79));
-	literals.put(new ANTLRHashString("char", this), new Integer(81));
-	literals.put(new ANTLRHashString("private", this), new Integer(88));
-	literals.put(new ANTLRHashString("default", this), new Integer(106));
-	literals.put(new ANTLRHashString("false", this), new Integer(157));
-	literals.put(new ANTLRHashString("this", this), new Integer(108));
-	literals.put(new ANTLRHashString("static", this), new Integer(65));
-	literals.put(new ANTLRHashString("abstract", this), new Integer(40));
-	literals.put(new ANTLRHashString("continue", this), new Integer(117));
-	literals.put(new ANTLRHashString("finally", this), new Integer(125));
-	literals.put(new ANTLRHashString("else", this), new Integer(113));
-	literals.put(new ANTLRHashString("import", this), new Integer(64));
-	literals.put(new ANTLRHashString("void", this), new Integer(78));
-	literals.put(new ANTLRHashString("switch", this), new Integer(119));
-	literals.put(new ANTLRHashString("true", this), new Integer(156));
-	literals.put(new ANTLRHashString("long", this), new Integer(85));
+	// hand edited: keywords are told apart by JavaKeywords, see testLiteralsTable
 }
 
 public Token nextToken() throws TokenStreamException {
@@ -1292,10 +1262,10 @@ public Token nextToken() throws TokenStreamException {
 		if ( inputState.guessing==0 ) {
 
 						// check if "assert" keyword is enabled
-						if (assertEnabled && "assert".equals(new String(text.getBuffer(),_begin,text.length()-_begin)))
+						if (assertEnabled && JavaKeywords.is(text.getBuffer(),_begin,text.length()-_begin,"assert"))
 							_ttype = LITERAL_assert; // set token type for the rule in the parser
 						// check if "enum" keyword is enabled
-						if (enumEnabled && "enum".equals(new String(text.getBuffer(),_begin,text.length()-_begin)))
+						if (enumEnabled && JavaKeywords.is(text.getBuffer(),_begin,text.length()-_begin,"enum"))
 							_ttype = LITERAL_enum; // set token type for the rule in the parser
 
 		}
@@ -202,6 +202,114 @@ public class JavaRecognizer extends antlr.LLkParser       implements JavaTokenTy
 	 */
 	private int ltCounter = 0;
 
+	/**
+	 * Readies this parser for the next file of the token stream it was built
+	 * on, after its lexer has been reset, so one parser can parse many files.
+	 */
+	public void reset() {
+		inputState.reset();
+		returnAST = null;
+		traceDepth = 0;
+		ltCounter = 0;
+		predicates.clear();
+		position = 0;
+		marked = 0;
+		guessedPredicates = 0;
+		recalledPredicates = 0;
+		backtrackedTokens = 0;
+	}
+
+	/**
+	 * The outcome of every syntactic predicate guessed so far, by token
+	 * index. A predicate is guessed again at the same token whenever an
+	 * enclosing predicate matched, once while guessing the enclosing one and
+	 * once more while parsing for real, so that nested anonymous classes
+	 * and the like cost a parse per level of nesting without this.
+	 *
+	 * NB: the generated predicates are edited by hand to recall() and
+	 * remember() their outcomes; redo that after regenerating
+	 * JavaRecognizer.java.
+	 */
+	private final PredicateMemo predicates = new PredicateMemo();
+
+	/**
+	 * The index of LT(1) among the tokens of the file, and the index each
+	 * outstanding mark() was taken at.
+	 */
+	private int position;
+	private int[] marks = new int[16];
+	private int marked;
+
+	/**
+	 * The outcome found by the last recall() that found one.
+	 */
+	private boolean recalled;
+
+	private long guessedPredicates;
+	private long recalledPredicates;
+	private long backtrackedTokens;
+
+	public void consume() throws TokenStreamException {
+		super.consume();
+		++position;
+		if (inputState.guessing > 0)
+			++backtrackedTokens;
+	}
+
+	public int mark() {
+		if (marked == marks.length)
+			marks = java.util.Arrays.copyOf(marks, 2 * marked);
+		marks[marked++] = position;
+		return super.mark();
+	}
+
+	public void rewind(int m) {
+		super.rewind(m);
+		position = marks[--marked];
+	}
+
+	/**
+	 * @returns whether the predicate has been guessed at LT(1) before, its
+	 * outcome then left in recalled
+	 */
+	private boolean recall(int predicate) {
+		int outcome = predicates.get(predicate, position, ltCounter);
+		if (outcome == PredicateMemo.UNKNOWN) {
+			++guessedPredicates;
+			return false;
+		}
+		++recalledPredicates;
+		recalled = outcome == PredicateMemo.MATCHED;
+		return true;
+	}
+
+	private void remember(int predicate, boolean matched) {
+		predicates.put(predicate, position, ltCounter, matched);
+	}
+
+	/**
+	 * @returns the syntactic predicates guessed since the last reset()
+	 */
+	public long guessedPredicates() {
+		return guessedPredicates;
+	}
+
+	/**
+	 * @returns the syntactic predicates found remembered rather than guessed
+	 * since the last reset()
+	 */
+	public long recalledPredicates() {
+		return recalledPredicates;
+	}
+
+	/**
+	 * @returns the tokens consumed while guessing since the last reset(),
+	 * which is the work backtracking costs
+	 */
+	public long backtrackedTokens() {
+		return backtrackedTokens;
+	}
+
 protected JavaRecognizer(final TokenBuffer tokenBuf, final int k) {
   super(tokenBuf,k);
   tokenNames = _tokenNames;
@@ -243,7 +351,9 @@ public JavaRecognizer(final ParserSharedInputState state) {
 			int _m4 = mark();
 			synPredMatched4 = true;
 			inputState.guessing++;
-			try {
+			if (recall(4)) {
+				synPredMatched4 = recalled;
+			} else try {
 				{
 				annotations();
 				match(LITERAL_package);
@@ -254,6 +364,7 @@ public JavaRecognizer(final ParserSharedInputState state) {
 			}
 			rewind(_m4);
 inputState.guessing--;
+			remember(4, synPredMatched4);
 		}
 		if ( synPredMatched4 ) {
 			packageDefinition();
@@ -1322,7 +1433,9 @@ inputState.guessing--;
 			int _m30 = mark();
 			synPredMatched30 = true;
 			inputState.guessing++;
-			try {
+			if (recall(30)) {
+				synPredMatched30 = recalled;
+			} else try {
 				{
 				switch ( LA(1)) {
 				case LITERAL_extends:
@@ -1347,6 +1460,7 @@ inputState.guessing--;
 			}
 			rewind(_m30);
 inputState.guessing--;
+			remember(30, synPredMatched30);
 		}
 		if ( synPredMatched30 ) {
 			typeArgumentBounds();
@@ -3737,7 +3851,9 @@ inputState.guessing--;
 			int _m176 = mark();
 			synPredMatched176 = true;
 			inputState.guessing++;
-			try {
+			if (recall(176)) {
+				synPredMatched176 = recalled;
+			} else try {
 				{
 				parameterDeclaration();
 				}
@@ -3747,6 +3863,7 @@ inputState.guessing--;
 			}
 			rewind(_m176);
 inputState.guessing--;
+			remember(176, synPredMatched176);
 		}
 		if ( synPredMatched176 ) {
 			parameterDeclaration();
@@ -3759,7 +3876,9 @@ inputState.guessing--;
 					int _m179 = mark();
 					synPredMatched179 = true;
 					inputState.guessing++;
-					try {
+					if (recall(179)) {
+						synPredMatched179 = recalled;
+					} else try {
 						{
 						match(COMMA);
 						parameterDeclaration();
@@ -3770,6 +3889,7 @@ inputState.guessing--;
 					}
 					rewind(_m179);
 inputState.guessing--;
+					remember(179, synPredMatched179);
 				}
 				if ( synPredMatched179 ) {
 					match(COMMA);
@@ -4317,7 +4437,9 @@ inputState.guessing--;
 				int _m195 = mark();
 				synPredMatched195 = true;
 				inputState.guessing++;
-				try {
+				if (recall(195)) {
+					synPredMatched195 = recalled;
+				} else try {
 					{
 					declaration();
 					}
@@ -4327,6 +4449,7 @@ inputState.guessing--;
 				}
 				rewind(_m195);
 inputState.guessing--;
+				remember(195, synPredMatched195);
 			}
 			if ( synPredMatched195 ) {
 				declaration();
@@ -4772,7 +4895,9 @@ inputState.guessing--;
 			int _m206 = mark();
 			synPredMatched206 = true;
 			inputState.guessing++;
-			try {
+			if (recall(206)) {
+				synPredMatched206 = recalled;
+			} else try {
 				{
 				forInit();
 				match(SEMI);
@@ -4783,6 +4908,7 @@ inputState.guessing--;
 			}
 			rewind(_m206);
 inputState.guessing--;
+			remember(206, synPredMatched206);
 		}
 		if ( synPredMatched206 ) {
 			traditionalForClause();
@@ -4953,7 +5079,9 @@ inputState.guessing--;
 			int _m220 = mark();
 			synPredMatched220 = true;
 			inputState.guessing++;
-			try {
+			if (recall(220)) {
+				synPredMatched220 = recalled;
+			} else try {
 				{
 				declaration();
 				}
@@ -4963,6 +5091,7 @@ inputState.guessing--;
 			}
 			rewind(_m220);
 inputState.guessing--;
+			remember(220, synPredMatched220);
 		}
 		if ( synPredMatched220 ) {
 			declaration();
@@ -6046,7 +6175,9 @@ inputState.guessing--;
 				int _m280 = mark();
 				synPredMatched280 = true;
 				inputState.guessing++;
-				try {
+				if (recall(280)) {
+					synPredMatched280 = recalled;
+				} else try {
 					{
 					match(LPAREN);
 					builtInTypeSpec(true);
@@ -6059,6 +6190,7 @@ inputState.guessing--;
 				}
 				rewind(_m280);
 inputState.guessing--;
+				remember(280, synPredMatched280);
 			}
 			if ( synPredMatched280 ) {
 				lpb = LT(1);
@@ -6079,7 +6211,9 @@ inputState.guessing--;
 					int _m282 = mark();
 					synPredMatched282 = true;
 					inputState.guessing++;
-					try {
+					if (recall(282)) {
+						synPredMatched282 = recalled;
+					} else try {
 						{
 						match(LPAREN);
 						classTypeSpec(true);
@@ -6092,6 +6226,7 @@ inputState.guessing--;
 					}
 					rewind(_m282);
 inputState.guessing--;
+					remember(282, synPredMatched282);
 				}
 				if ( synPredMatched282 ) {
 					lp = LT(1);
@@ -6919,7 +7054,9 @@ inputState.guessing--;
 				int _m302 = mark();
 				synPredMatched302 = true;
 				inputState.guessing++;
-				try {
+				if (recall(302)) {
+					synPredMatched302 = recalled;
+				} else try {
 					{
 					match(DOT);
 					{
@@ -6947,6 +7084,7 @@ inputState.guessing--;
 				}
 				rewind(_m302);
 inputState.guessing--;
+				remember(302, synPredMatched302);
 			}
 			if ( synPredMatched302 ) {
 				AST tmp255_AST = null;
@@ -0,0 +1,114 @@
+package jatran.lexing;
+
+import java.util.Arrays;
+
+/**
+ * PredicateMemo: the outcomes of the syntactic predicates a JavaRecognizer
+ * has guessed in one file, by predicate, token index and ltCounter.
+ *
+ * A guess never changes ltCounter, which the typeArguments rule checks, so
+ * those three decide the outcome. The table is open addressed over parallel
+ * arrays and kept from file to file, cleared rather than reallocated.
+ */
+final class PredicateMemo {
+	static final int UNKNOWN = -1;
+	static final int FAILED = 0;
+	static final int MATCHED = 1;
+
+	PredicateMemo() {
+		allocate(64);
+	}
+
+	/**
+	 * @returns MATCHED or FAILED as remembered, or UNKNOWN if the predicate
+	 * has not been guessed there yet
+	 */
+	int get(final int predicate, final int index, final int ltCounter) {
+		long key = key(predicate, index);
+		for (int i = slot(key, ltCounter); keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key && ltCounters[i] == ltCounter)
+				return outcomes[i];
+		}
+		return UNKNOWN;
+	}
+
+	void put(final int predicate, final int index, final int ltCounter, final boolean matched) {
+		if (2 * (size + 1) > keys.length)
+			grow();
+
+		long key = key(predicate, index);
+		int i = slot(key, ltCounter);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key && ltCounters[i] == ltCounter) {
+				outcomes[i] = (byte) (matched ? MATCHED : FAILED);
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		ltCounters[i] = ltCounter;
+		outcomes[i] = (byte) (matched ? MATCHED : FAILED);
+		++size;
+	}
+
+	/**
+	 * Forgets every outcome, keeping the table at the size the last file
+	 * needed.
+	 */
+	void clear() {
+		if (size == 0)
+			return;
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldLtCounters = ltCounters;
+		byte[] oldOutcomes = outcomes;
+
+		allocate(2 * oldKeys.length);
+		for (int j = 0; j < oldKeys.length; ++j) {
+			if (oldKeys[j] == EMPTY)
+				continue;
+			int i = slot(oldKeys[j], oldLtCounters[j]);
+			while (keys[i] != EMPTY)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			ltCounters[i] = oldLtCounters[j];
+			outcomes[i] = oldOutcomes[j];
+		}
+	}
+
+	private void allocate(final int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		ltCounters = new int[capacity];
+		outcomes = new byte[capacity];
+		mask = capacity - 1;
+	}
+
+	private static long key(final int predicate, final int index) {
+		return ((long) index << 32) | predicate;
+	}
+
+	private int slot(final long key, final int ltCounter) {
+		long h = (key ^ ltCounter) * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+
+	/**
+	 * Token indices and predicate numbers are never negative, so no key is.
+	 */
+	private static final long EMPTY = -1;
+
+	private long[] keys;
+	private int[] ltCounters;
+	private byte[] outcomes;
+	private int mask;
+	private int size;
+}
@@ -0,0 +1,186 @@
+package jatran.lexing;
+
+import java.io.PrintStream;
+
+import antlr.ASTFactory;
+import antlr.InputBuffer;
+import antlr.RecognitionException;
+import antlr.Token;
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+import antlr.collections.AST;
+
+/**
+ * SourceParser: a JavaLexer and the JavaRecognizer reading from it, kept
+ * together and reset between files rather than built anew for each one.
+ *
+ * Building a recognizer means building its AST factory and token type map;
+ * across thousands of small files that setup costs more than parsing them.
+ * A SourceParser is not thread safe, so each thread borrows its own through
+ * forCurrentThread(). The parser reads tokens through the SourceParser, which
+ * can count them and time the lexer apart from the parser when asked to.
+ *
+ * A compact SourceParser builds each file's tree with a new
+ * CompactASTFactory, sized after the previous file's: the tree takes about
+ * half the heap of CommonAST nodes, for somewhat slower parsing. Otherwise
+ * trees are made of CommonAST nodes, the way JavaRecognizer builds them.
+ *
+ * The recognizer recovers from syntax errors in package, import and type
+ * definitions, which then do not fail the parse; it reports them, and its
+ * warnings, to the stream set with setErrors() rather than to System.err.
+ */
+public final class SourceParser implements TokenStream {
+	public SourceParser() {
+		this(false);
+	}
+
+	public SourceParser(final boolean compact) {
+		this.compact = compact;
+		lexer = new JavaLexer(new CharArrayInputBuffer(""));
+		parser = new JavaRecognizer(this) {
+			@Override public void reportError(final RecognitionException e) {
+				errors.println(e);
+			}
+
+			@Override public void reportError(final String s) {
+				errors.println(null == getFilename() ? "error: " + s : getFilename() + ": error: " + s);
+			}
+
+			@Override public void reportWarning(final String s) {
+				errors.println(null == getFilename() ? "warning: " + s : getFilename() + ": warning: " + s);
+			}
+		};
+	}
+
+	/**
+	 * @returns the SourceParser of the current thread, made on first use
+	 */
+	public static SourceParser forCurrentThread() {
+		return forCurrentThread(false);
+	}
+
+	/**
+	 * @returns the SourceParser of the current thread that builds compact
+	 * trees or not, made on first use
+	 */
+	public static SourceParser forCurrentThread(final boolean compact) {
+		SourceParser[] parsers = POOL.get();
+		int i = compact ? 1 : 0;
+		if (parsers[i] == null)
+			parsers[i] = new SourceParser(compact);
+		return parsers[i];
+	}
+
+	/**
+	 * Parses a whole compilation unit.
+	 * @param timed whether to count tokens and time the lexer, for tokens() and lexNanos()
+	 * @returns the tree of the compilation unit, built by astFactory()
+	 */
+	public AST parse(final InputBuffer in, final String filename, final boolean timed)
+			throws RecognitionException, TokenStreamException {
+		lexer.reset(in);
+		lexer.setFilename(filename);
+		parser.reset();
+		parser.setFilename(filename);
+		if (compact)
+			parser.setASTFactory(new CompactASTFactory(nodes));
+
+		this.timed = timed;
+		tokens = 0;
+		lexNanos = 0;
+
+		parser.compilationUnit();
+		if (compact) {
+			CompactASTFactory tree = (CompactASTFactory) parser.getASTFactory();
+			tree.forgetViews();
+			nodes = tree.size();
+		}
+		return parser.getAST();
+	}
+
+	/**
+	 * Sets where the errors recovered from and the warnings of the parses
+	 * that follow are reported; System.err until set.
+	 */
+	public void setErrors(final PrintStream errors) {
+		this.errors = null == errors ? System.err : errors;
+	}
+
+	public Token nextToken() throws TokenStreamException {
+		if (!timed)
+			return lexer.nextToken();
+
+		long start = System.nanoTime();
+		try {
+			Token t = lexer.nextToken();
+			if (t.getType() != Token.EOF_TYPE)
+				++tokens;
+			return t;
+		} finally {
+			lexNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * @returns the factory that built the last tree, for adding nodes to it
+	 */
+	public ASTFactory astFactory() {
+		return parser.getASTFactory();
+	}
+
+	/**
+	 * @returns the tokens the last timed parse read
+	 */
+	public long tokens() {
+		return tokens;
+	}
+
+	/**
+	 * @returns the time the last timed parse spent in the lexer
+	 */
+	public long lexNanos() {
+		return lexNanos;
+	}
+
+	/**
+	 * @returns the tokens the last parse consumed while guessing syntactic
+	 * predicates, on top of those it parsed for real
+	 */
+	public long backtrackedTokens() {
+		return parser.backtrackedTokens();
+	}
+
+	/**
+	 * @returns the syntactic predicates the last parse guessed
+	 */
+	public long guessedPredicates() {
+		return parser.guessedPredicates();
+	}
+
+	/**
+	 * @returns the syntactic predicates the last parse had guessed at the
+	 * same token before, and so did not guess again
+	 */
+	public long recalledPredicates() {
+		return parser.recalledPredicates();
+	}
+
+	private final JavaLexer lexer;
+	private final JavaRecognizer parser;
+	private final boolean compact;
+	private int nodes = 256;
+	private PrintStream errors = System.err;
+
+	private boolean timed;
+	private long tokens;
+	private long lexNanos;
+
+	/**
+	 * A common and a compact parser per thread.
+	 */
+	private static final ThreadLocal<SourceParser[]> POOL = new ThreadLocal<SourceParser[]>() {
+		@Override protected SourceParser[] initialValue() {
+			return new SourceParser[2];
+		}
+	};
+}
@@ -207,6 +207,114 @@ tokens {
 	 * either GT, SR or BSR tokens.
 	 */
 	private int ltCounter = 0;
+
+	/**
+	 * Readies this parser for the next file of the token stream it was built
+	 * on, after its lexer has been reset, so one parser can parse many files.
+	 */
+	public void reset() {
+		inputState.reset();
+		returnAST = null;
+		traceDepth = 0;
+		ltCounter = 0;
+		predicates.clear();
+		position = 0;
+		marked = 0;
+		guessedPredicates = 0;
+		recalledPredicates = 0;
+		backtrackedTokens = 0;
+	}
+
+	/**
+	 * The outcome of every syntactic predicate guessed so far, by token
+	 * index. A predicate is guessed again at the same token whenever an
+	 * enclosing predicate matched, once while guessing the enclosing one and
+	 * once more while parsing for real, so that nested anonymous classes
+	 * and the like cost a parse per level of nesting without this.
+	 *
+	 * NB: the generated predicates are edited by hand to recall() and
+	 * remember() their outcomes; redo that after regenerating
+	 * JavaRecognizer.java.
+	 */
+	private final PredicateMemo predicates = new PredicateMemo();
+
+	/**
+	 * The index of LT(1) among the tokens of the file, and the index each
+	 * outstanding mark() was taken at.
+	 */
+	private int position;
+	private int[] marks = new int[16];
+	private int marked;
+
+	/**
+	 * The outcome found by the last recall() that found one.
+	 */
+	private boolean recalled;
+
+	private long guessedPredicates;
+	private long recalledPredicates;
+	private long backtrackedTokens;
+
+	public void consume() throws TokenStreamException {
+		super.consume();
+		++position;
+		if (inputState.guessing > 0)
+			++backtrackedTokens;
+	}
+
+	public int mark() {
+		if (marked == marks.length)
+			marks = java.util.Arrays.copyOf(marks, 2 * marked);
+		marks[marked++] = position;
+		return super.mark();
+	}
+
+	public void rewind(int m) {
+		super.rewind(m);
+		position = marks[--marked];
+	}
+
+	/**
+	 * @returns whether the predicate has been guessed at LT(1) before, its
+	 * outcome then left in recalled
+	 */
+	private boolean recall(int predicate) {
+		int outcome = predicates.get(predicate, position, ltCounter);
+		if (outcome == PredicateMemo.UNKNOWN) {
+			++guessedPredicates;
+			return false;
+		}
+		++recalledPredicates;
+		recalled = outcome == PredicateMemo.MATCHED;
+		return true;
+	}
+
+	private void remember(int predicate, boolean matched) {
+		predicates.put(predicate, position, ltCounter, matched);
+	}
+
+	/**
+	 * @returns the syntactic predicates guessed since the last reset()
+	 */
+	public long guessedPredicates() {
+		return guessedPredicates;
+	}
+
+	/**
+	 * @returns the syntactic predicates found remembered rather than guessed
+	 * since the last reset()
+	 */
+	public long recalledPredicates() {
+		return recalledPredicates;
+	}
+
+	/**
+	 * @returns the tokens consumed while guessing since the last reset(),
+	 * which is the work backtracking costs
+	 */
+	public long backtrackedTokens() {
+		return backtrackedTokens;
+	}
 }
 
 // Compilation Unit: In Java, this is a single file. This is the start
@@ -1564,6 +1672,34 @@ options {
 	public void enableEnum(boolean shouldEnable) { enumEnabled = shouldEnable; }
 	/** Query the "enum" keyword state */
 	public boolean isEnumEnabled() { return enumEnabled; }
+
+	/**
+	 * Points this lexer at new input, as if it had just been built on it,
+	 * so one lexer can scan many files. The keyword flags are kept.
+	 */
+	public void reset(InputBuffer ib) {
+		setInputState(new LexerSharedInputState(ib));
+		resetText();
+		_returnToken = null;
+		commitToPath = false;
+		traceDepth = 0;
+	}
+
+	/**
+	 * Keywords are looked up with JavaKeywords rather than in the literals
+	 * table, which would take a lock and a hash per identifier.
+	 *
+	 * NB: the generated constructor is edited by hand not to fill the
+	 * literals table, which nothing reads; redo that after regenerating
+	 * JavaLexer.java.
+	 */
+	public int testLiteralsTable(int ttype) {
+		return JavaKeywords.type(text.getBuffer(), 0, text.length(), ttype);
+	}
+
+	public int testLiteralsTable(String s, int ttype) {
+		return JavaKeywords.type(s.toCharArray(), 0, s.length(), ttype);
+	}
 }
 
 // OPERATORS
@@ -1740,11 +1876,11 @@ IDENT
 	:	('a'..'z'|'A'..'Z'|'_'|'$') ('a'..'z'|'A'..'Z'|'_'|'0'..'9'|'$')*
 		{
 			// check if "assert" keyword is enabled
-			if (assertEnabled && "assert".equals($getText)) {
+			if (assertEnabled && JavaKeywords.is(text.getBuffer(), _begin, text.length()-_begin, "assert")) {
 				$setType(LITERAL_assert); // set token type for the rule in the parser
 			}
 			// check if "enum" keyword is enabled
-			if (enumEnabled && "enum".equals($getText)) {
+			if (enumEnabled && JavaKeywords.is(text.getBuffer(), _begin, text.length()-_begin, "enum")) {
 				$setType(LITERAL_enum); // set token type for the rule in the parser
 			}
 		}
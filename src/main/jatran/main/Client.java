@@ -0,0 +1,129 @@
+package jatran.main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Client: a thin command line that has a resident jatran, started with
+ * --serve, run its arguments, instead of starting one of its own. It loads
+ * neither Scala nor ANTLR, so it starts about as fast as a JVM can, and the
+ * translation itself runs on code the server has long since warmed up.
+ *
+ * The server announces itself in the daemon file, ~/.jatran-daemon unless
+ * the jatran.daemon system property says otherwise, with the loopback port
+ * it listens on and a token to send with every request. Only its owner can
+ * read the file, so only they can have the server translate.
+ *
+ * A request is the token, a command, the client's working folder, which
+ * relative paths are taken against, and the arguments; the response is the
+ * exit status and what the run printed to stdout and to stderr. Everything
+ * goes through Data streams.
+ */
+public final class Client {
+	/**
+	 * The system property naming the daemon file.
+	 */
+	public static final String DAEMON_PROPERTY = "jatran.daemon";
+
+	/**
+	 * The commands a request may carry.
+	 */
+	public static final String RUN = "run";
+	public static final String STOP = "stop";
+
+	/**
+	 * The exit statuses of a run: translated, with some sources failing,
+	 * and not run at all for bad arguments or a missing server.
+	 */
+	public static final int OK = 0;
+	public static final int FAILED = 1;
+	public static final int NOT_RUN = 2;
+
+	public static void main(final String[] argv) {
+		int status;
+		if (1 == argv.length && "--stop".equals(argv[0]))
+			status = send(STOP, new String[0], System.out, System.err);
+		else
+			status = send(RUN, argv, System.out, System.err);
+		System.exit(status);
+	}
+
+	/**
+	 * Sends a request to the server the daemon file names, and copies what
+	 * it printed to out and err.
+	 * @returns the exit status of the run, or NOT_RUN if no server answered
+	 */
+	public static int send(final String command, final String[] args, final PrintStream out, final PrintStream err) {
+		File daemon = daemonFile();
+		String[] announced;
+		try {
+			announced = read(daemon).trim().split(" ");
+		} catch (IOException e) {
+			err.println("jatran: no server announced in " + daemon + "; start one with --serve");
+			return NOT_RUN;
+		}
+
+		try {
+			Socket socket = new Socket(InetAddress.getByName(null), Integer.parseInt(announced[0]));
+			try {
+				DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				request.writeUTF(announced[1]);
+				request.writeUTF(command);
+				request.writeUTF(new File("").getAbsolutePath());
+				request.writeInt(args.length);
+				for (String arg : args)
+					request.writeUTF(arg);
+				request.flush();
+
+				DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				int status = response.readInt();
+				out.write(bytes(response));
+				err.write(bytes(response));
+				out.flush();
+				err.flush();
+				return status;
+			} finally {
+				socket.close();
+			}
+		} catch (IOException e) {
+			err.println("jatran: the server announced in " + daemon + " did not answer: " + e.getMessage());
+			return NOT_RUN;
+		} catch (RuntimeException e) {
+			err.println("jatran: cannot read " + daemon + ": " + e);
+			return NOT_RUN;
+		}
+	}
+
+	public static File daemonFile() {
+		String path = System.getProperty(DAEMON_PROPERTY);
+		return null != path ? new File(path) : new File(System.getProperty("user.home"), ".jatran-daemon");
+	}
+
+	private static byte[] bytes(final DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static String read(final File file) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = in.readLine();
+			if (null == line)
+				throw new IOException("empty");
+			return line;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -1,28 +1,69 @@
 package jatran.main
 
 import java.io._
+import java.nio.charset.Charset
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 import scala.io._
 import scalax.io._
 import RichFile._
 
-import antlr.ASTFactory
 import antlr.collections.AST
 
 import jatran.core.ScalaPrinter
 import jatran.core.SourcePrinter
+import jatran.io._
 
-import jatran.lexing.JavaLexer
-import jatran.lexing.JavaRecognizer
+import jatran.lexing.CharArrayInputBuffer
+import jatran.lexing.JavaTokenTypes
+import jatran.lexing.SourceParser
+
+import jatran.metrics._
 
 /**
  * @author eokyere
  */
 object Main {
-  def main(argv:Array[String]) {  
+  def main(argv:Array[String]) {
+    val status = run(argv, null, System.out, System.err)
+    if (Client.OK != status)
+      System.exit(status)
+  }
+
+  /**
+   * runs the command line argv, printing to out and err. relative paths are
+   * taken against cwd, or the current folder if it is null, as it is on the
+   * command line proper; only there can a server be started. a report
+   * published over JMX is taken back once the run ends; one a client asked
+   * for is named after the run, as the server may run several at once.
+   * @returns a Client exit status: OK, FAILED if a source failed, NOT_RUN
+   * for bad arguments
+   */
+  def run(argv:Array[String], cwd:File, out:PrintStream, err:PrintStream):Int = {
     object Options extends CommandLineParser {
-      val input = new StringOption('i', "input", "src file or folder to transform") with AllowAll
-      val output = new StringOption('o', "output", "output folder; defaults to jatran-out under current dir") with AllowAll
+      val input = new StringOption('i', "input", "src file, folder, or zip or jar archive to transform") with AllowAll
+      val output = new StringOption('o', "output", "output folder, or zip or jar archive; defaults to jatran-out under current dir") with AllowAll
+      val threads = new IntOption('t', "threads", "number of files to translate in parallel; 0 uses one per core") with AllowAll
+      val encoding = new StringOption('e', "encoding", "encoding of the java sources; defaults to the platform encoding") with AllowAll
+      val incremental = new Flag('c', "incremental", "only translate sources that changed since the last run into the same output folder") with AllowAll
+      val compact = new Flag('k', "compact", "keep parsed trees in compact arrays: about half the heap per file, for slower parsing") with AllowAll
+      val metrics = new StringOption('m', "metrics", "write per file timings and counts to this file, as csv if it ends in .csv and json otherwise") with AllowAll
+      val jmx = new Flag('j', "jmx", "publish running totals of the timings and counts as a JMX MBean") with AllowAll
+      val writeBehind = new Flag('w', "write-behind", "write output files from a thread of their own while translating goes on") with AllowAll
+      val include = new StringOption('n', "include", "comma separated globs of the source paths to translate, such as com/acme/**; defaults to all") with AllowAll
+      val exclude = new StringOption('x', "exclude", "comma separated globs of the source paths not to translate, such as **/test/**") with AllowAll
+      val readAhead = new IntOption('r', "read-ahead", "number of sources to read ahead of translating them; 0 reads each as it is translated; defaults to 8") with AllowAll
+      val readAheadMemory = new IntOption('a', "read-ahead-mb", "megabytes the sources read ahead may take up; defaults to 64") with AllowAll
+      val heapBudget = new IntOption('b', "heap-budget-mb", "megabytes of heap the files translated in parallel may take up; defaults to half the heap") with AllowAll
+      val watch = new Flag('W', "watch", "after translating, keep the output in sync with the input folder as its sources change, until stopped") with AllowAll
+      val serve = new Flag('s', "serve", "stay resident and run the command lines of jatran.main.Client until it sends --stop") with AllowNone
       val help = new Flag('h', "help", "Show help info") with AllowNone
       
       override def helpHeader = """
@@ -30,69 +71,600 @@ object Main {
           |  (c) 2006-2008 Emmanuel Okyere
           |
           |""".stripMargin
+
+      override def showError(message:String) {
+        err.println("jatran: " + message)
+        showHelp(err)
+      }
     }
     
     val jatran = new Jatran()
+    jatran.err = err
+    var status = Client.NOT_RUN
+    var report:MetricsReport = null
 
-    Options.parseOrHelp(argv) { cmd =>
-      if(cmd(Options.help)) {
-      	 Options.showHelp(System.out)
-         return
-      }
+    try {
+      Options.parseOrHelp(argv) { cmd =>
+        if(cmd(Options.help)) {
+        	 Options.showHelp(out)
+           return Client.OK
+        }
+
+        if (cmd(Options.serve)) {
+          if (null != cwd) {
+            err.println("jatran: a server is started from the command line, not by a client")
+            return Client.NOT_RUN
+          }
+          val server = new Server(Client.daemonFile())
+          out.println("jatran: serving on port " + server.port + ", announced in " + Client.daemonFile())
+          server.serve()
+          return Client.OK
+        }
       
-      (cmd(Options.input), cmd(Options.output)) match {
-        case (Some(i), Some(o)) =>
-          jatran.transform(i, o, false)
-        case (Some(i), None) =>
-          jatran.transform(i, "jatran-out", false)
-        case _ =>
-          Options.showHelp(System.out)
+        for (e <- cmd(Options.encoding))
+          jatran.encoding = Charset.forName(e)
+
+        jatran.incremental = cmd(Options.incremental)
+        jatran.compact = cmd(Options.compact)
+        jatran.writeBehind = cmd(Options.writeBehind)
+        jatran.globs = new Globs(globs(cmd(Options.include)), globs(cmd(Options.exclude)))
+        for (n <- cmd(Options.readAhead))
+          jatran.readAhead = Math.max(n, 0)
+        for (mb <- cmd(Options.readAheadMemory))
+          jatran.readAheadBytes = mb * (1L << 20)
+        for (mb <- cmd(Options.heapBudget))
+          jatran.heapBudget = mb * (1L << 20)
+
+        if (cmd(Options.metrics).isDefined || cmd(Options.jmx)) {
+          report = new MetricsReport()
+          jatran.metrics = report
+          if (cmd(Options.jmx))
+            report.register(if (null == cwd) MetricsReport.OBJECT_NAME else MetricsReport.OBJECT_NAME + ",run=" + runs.incrementAndGet())
+        }
+
+        val threads = cmd(Options.threads) match {
+          case Some(n) if n <= 0 => Runtime.getRuntime().availableProcessors()
+          case Some(n) => n
+          case None => 1
+        }
+
+        if (cmd(Options.watch)) {
+          if (null != cwd) {
+            err.println("jatran: only the command line can watch, not a client")
+            return Client.NOT_RUN
+          }
+          if (cmd(Options.metrics).isDefined) {
+            err.println("jatran: metrics are written when a run ends, which a watch never does; use --jmx instead")
+            return Client.NOT_RUN
+          }
+          val src = cmd(Options.input) match {
+            case Some(i) => resolve(cwd, i)
+            case None =>
+              Options.showHelp(out)
+              return Client.NOT_RUN
+          }
+          val dest = resolve(cwd, cmd(Options.output).getOrElse("jatran-out"))
+          if (Jatran.isArchive(src) || Jatran.isArchive(dest)) {
+            err.println("jatran: only a folder can be watched into a folder, not a zip or jar archive")
+            return Client.NOT_RUN
+          }
+          jatran.watch(src, dest.getPath(), false, threads, out)
+          return Client.OK
+        }
+
+        val results = (cmd(Options.input), cmd(Options.output)) match {
+          case (Some(i), Some(o)) =>
+            jatran.transform(resolve(cwd, i), resolve(cwd, o).getPath(), false, threads)
+          case (Some(i), None) =>
+            jatran.transform(resolve(cwd, i), resolve(cwd, "jatran-out").getPath(), false, threads)
+          case _ =>
+            Options.showHelp(out)
+            Nil
+        }
+        status = if (results.exists(_.failed)) Client.FAILED else Client.OK
+
+        for (m <- cmd(Options.metrics))
+          report.write(resolve(cwd, m))
       }
+    } finally {
+      if (null != report)
+        report.unregister()
     }
+    status
+  }
+
+  /** the runs so far, to name the reports of those clients publish over JMX */
+  private val runs = new AtomicInteger()
+
+  /** path as given if cwd is null or path is absolute, else under cwd */
+  private def resolve(cwd:File, path:String):File = {
+    val f = new File(path)
+    if (null == cwd || f.isAbsolute()) f else new File(cwd, path)
   }
+
+  private def globs(option:Option[String]):Array[String] = option match {
+    case Some(s) => s.split(",").map(_.trim).filter(_.length > 0)
+    case None => new Array[String](0)
+  }
+}
+
+/**
+ * the outcome of translating one source file; error is set if the file could
+ * not be lexed, parsed or printed. bytesRead is what was read from source,
+ * which is its length when the file was read exactly once. skipped is set if
+ * an incremental run found the file unchanged and left its output alone.
+ */
+case class Translation(source:File, bytesRead:Long, skipped:Boolean, error:Option[Throwable]) {
+  def failed = error.isDefined
 }
 
 class Jatran {
+  /** the charset sources are decoded with */
+  var encoding = Charset.defaultCharset()
+
+  /**
+   * whether to keep a manifest in the output folder and skip the sources
+   * whose content, translator version and options match its last entry
+   */
+  var incremental = false
+
+  /** whether parsed trees are built by a CompactASTFactory rather than of CommonAST nodes */
+  var compact = false
+
+  /** whether output files are written by a thread of their own rather than by the translating ones */
+  var writeBehind = false
+
+  /** if set, told how long each stage took on every source translated */
+  var metrics:Metrics = null
+
+  /** where the sources that failed are reported */
+  var err:PrintStream = System.err
+
+  /** which of the sources under a folder or in an archive are translated */
+  var globs = Globs.ALL
+
+  /** the number of sources read and decoded on a thread of their own ahead of translating them */
+  var readAhead = 8
+
+  /** the heap the sources read ahead may take up between them */
+  var readAheadBytes = 64L << 20
+
+  /** the heap the sources translated in parallel are estimated to take up between them; see Scheduler */
+  var heapBudget = Runtime.getRuntime().maxMemory() / 2
+
+  /** the size of source past which its translation is streamed to an output folder rather than buffered whole; see OutputFiles */
+  var streamed = OutputFiles.STREAMED
+
   def transform(src:String, out:String, untyped:Boolean) {
     transform(new File(src), out, untyped)
   }
   
   def transform(src:File, out:String, untyped:Boolean) {
-    for (f <- src.flatten; if f.name.endsWith(".java") && 5 <= f.name.length) {
-        val i = new BufferedReader(new FileReader(f))
+    transform(src, out, untyped, 1)
+  }
 
-        val lexer = new JavaLexer(i)
-        lexer.setFilename(f.name)
+  /**
+   * translates every java file under src, a file, a folder or a zip or jar
+   * archive, into out, a folder or a zip or jar archive
+   */
+  def transform(src:File, out:String, untyped:Boolean, threads:Int):List[Translation] = {
+    val sources = Jatran.sources(src, globs)
+    try {
+      val sink = Jatran.sink(new File(out))
+      try {
+        transform(sources, sink, untyped, threads)
+      } finally {
+        sink.close()
+      }
+    } finally {
+      sources.close()
+    }
+  }
 
-        val parser = new JavaRecognizer(lexer)
-        parser.setFilename(f.name)
+  /**
+   * translates src, a folder, into out, a folder, incrementally, and then
+   * keeps out in sync with it until the thread is interrupted. once src has
+   * been quiet for Watcher.DEBOUNCE milliseconds after a burst of changes,
+   * the sources touched are translated again and the outputs of those
+   * removed deleted; log hears of each burst.
+   */
+  def watch(src:File, out:String, untyped:Boolean, threads:Int, log:PrintStream) {
+    incremental = true
+    val watcher = new Watcher(src, globs, Watcher.DEBOUNCE)
+    val sink = new DirectorySink(new File(out))
+    try {
+      transform(src, out, untyped, threads)
+      log.println("jatran: watching " + src.getPath())
 
-        val root = new ASTFactory().create(SourcePrinter.ROOT_ID,"AST ROOT")
-        parser.compilationUnit()
-        root.setFirstChild(parser.getAST())
+      watcher.watch(new Watcher.Changes {
+        def changed(touched:java.util.List[File], removed:java.util.List[File]) {
+          val start = System.nanoTime()
+          val results = if (touched.isEmpty()) Nil else transform(new FileSources(touched), sink, untyped, threads)
+          val gone = List.range(0, removed.size()).map(i => removed.get(i).getAbsolutePath())
+          val deleted = delete(sink, f => gone.exists(g => f.getPath() == g || f.getPath().startsWith(g + File.separator)))
+          log.println("jatran: translated " + results.filter(r => !r.skipped && !r.failed).length + " and deleted " + deleted +
+                      " in " + (System.nanoTime() - start) / 1000000 + "ms")
+        }
 
-        val pkg = packageName(f)
-        val folder = new File(out + File.separator + pkg.replace(".", File.separator))
-        folder.mkdirs()
-        val fname = folder.getAbsolutePath() + File.separator + getClassName(f) + ".scala"
-    
-        val fl = new File(fname)                        
-        if (fl.exists())
-          fl.delete()
-    
-        //TODO: insert a virtual fileoutsteram here for testing
-        new ScalaPrinter().print(root, new PrintStream(new FileOutputStream(fname)), untyped)
+        def lost() {
+          transform(src, out, untyped, threads)
+          delete(sink, f => !f.exists())
+        }
+      })
+    } finally {
+      watcher.close()
     }
   }
-  
-  private def packageName(file:File):String = {
-    file.lines.foreach { line =>
-      val s = line.trim
-      if (s.startsWith("package"))
-        return s.substring(7, s.length - 1).trim
+
+  /** deletes the outputs of the sources gone says are, and drops them from the manifest */
+  private def delete(sink:DirectorySink, gone:File => Boolean):Int = {
+    val manifest = new Manifest(new File(sink.root(), Manifest.NAME))
+    val outputs = manifest.removeWhere(gone)
+    for (o <- outputs)
+      sink.delete(o)
+    manifest.save()
+    outputs.length
+  }
+
+  /**
+   * translates every java file of sources into sink, neither of which it
+   * closes. with more than one thread sources are discovered on a
+   * work-stealing pool, and translated as they are found by as many threads,
+   * largest first within the heap budget; either way the results come back
+   * sorted by source path, and a file that fails is reported
+   * without aborting the rest of the batch. sources that translate to the
+   * same output file all fail, and the file is removed. an incremental run keeps its manifest in the
+   * output folder, so it needs a DirectorySink.
+   */
+  def transform(sources:Sources, sink:Sink, untyped:Boolean, threads:Int):List[Translation] = {
+    val manifest = if (!incremental) null else sink match {
+      case d:DirectorySink => new Manifest(new File(d.root(), Manifest.NAME))
+      case _ => throw new IllegalArgumentException("an incremental run needs an output folder")
+    }
+    val input = new ReadAhead(sources, encoding, readAhead, readAheadBytes)
+    val output = new OutputFiles(sink, writeBehind, streamed)
+    val unwritten = new ConcurrentHashMap[File, Throwable]()
+    val claims = new Claims()
+    val translated = try {
+      if (threads <= 1) {
+        val files = sources.list()
+        for (i <- List.range(0, files.size()))
+          input.offer(files.get(i))
+        List.range(0, files.size()).map(i => translate(files.get(i), input, untyped, manifest, output, unwritten, claims))
+      } else {
+        translate(sources, input, untyped, manifest, output, unwritten, claims, threads)
+      }
+    } finally {
+      try {
+        output.close()
+      } finally {
+        input.close()
+      }
+    }
+
+    // sources that translate to the same file all fail, whichever wrote it
+    val collided = new java.util.HashMap[File, Throwable]()
+    for ((path, claimants) <- claims.collisions) {
+      try {
+        sink.delete(path)
+      } catch {
+        case e:IOException => // an archive keeps it; the sources are failed all the same
+      }
+      for (c <- claimants) {
+        if (null != manifest)
+          manifest.remove(c)
+        val others = claimants.filter(_ != c).map(_.getPath())
+        collided.put(c, new IOException(path + " is also the translation of " + others.mkString(", ")))
+      }
+    }
+
+    // the outputs of sources that moved to another package, unless taken over
+    if (null != manifest)
+      for (path <- claims.abandoned; if !manifest.isOutput(path)) {
+        try {
+          sink.delete(path)
+        } catch {
+          case e:IOException => err.println("jatran: could not delete " + path + ": " + e)
+        }
+      }
+
+    if (null != manifest)
+      manifest.save()
+
+    // with write-behind a source may fail to be written after its translation returned
+    val results = translated.sort((a, b) => a.source.compareTo(b.source) < 0).map(r => (unwritten.get(r.source), collided.get(r.source)) match {
+      case (null, null) => r
+      case (e, null) => Translation(r.source, r.bytesRead, false, Some(e))
+      case (_, e) => Translation(r.source, r.bytesRead, false, Some(e))
+    })
+
+    for (r <- results; if r.failed)
+      err.println("jatran: could not translate " + r.source.getPath() + ": " + r.error.get)
+
+    results
+  }
+
+  /**
+   * translation overlaps discovery: each file is lined up to be read ahead
+   * and handed to the scheduler the moment it is found, and the translating
+   * threads take them from it as the heap budget allows. once discovery ends
+   * the order of the files left is known, and those not read yet are lined
+   * up again in it.
+   */
+  private def translate(sources:Sources, input:ReadAhead, untyped:Boolean, manifest:Manifest,
+                        output:OutputFiles, unwritten:ConcurrentHashMap[File, Throwable], claims:Claims,
+                        threads:Int):List[Translation] = {
+    val scheduler = new Scheduler(heapBudget, compact)
+    val translated = new ConcurrentLinkedQueue[Translation]()
+    val discovery = new ForkJoinPool(threads)
+    val workers = Executors.newFixedThreadPool(threads)
+    var finished = false
+
+    try {
+      val jobs = List.range(0, threads).map(i => workers.submit(new Callable[Int] {
+        def call() = {
+          var n = 0
+          var f = scheduler.admit()
+          while (null != f) {
+            try {
+              translated.add(translate(f, input, untyped, manifest, output, unwritten, claims))
+            } finally {
+              scheduler.finished(f)
+            }
+            n = n + 1
+            f = scheduler.admit()
+          }
+          n
+        }
+      }))
+
+      try {
+        sources.discover(discovery, new Sources.Found {
+          def found(f:File) {
+            input.offer(f)
+            scheduler.add(f, sources.size(f))
+          }
+        })
+      } finally {
+        scheduler.end(new Sources.Found {
+          def found(f:File) {
+            input.offer(f)
+          }
+        })
+      }
+      jobs.foreach(_.get())
+      finished = true
+
+      var results:List[Translation] = Nil
+      val it = translated.iterator()
+      while (it.hasNext())
+        results = it.next() :: results
+      results
+    } finally {
+      if (finished) {
+        discovery.shutdown()
+        workers.shutdown()
+      } else {
+        // stop the workers before the caller closes what they write to
+        discovery.shutdownNow()
+        workers.shutdownNow()
+        awaitTermination(discovery)
+        awaitTermination(workers)
+      }
     }
+  }
+
+  /** waits for pool to stop, carrying on if interrupted, and then passing the interrupt on */
+  private def awaitTermination(pool:ExecutorService) {
+    var interrupted = false
+    var stopped = false
+    while (!stopped) {
+      try {
+        stopped = pool.awaitTermination(1, TimeUnit.SECONDS)
+      } catch {
+        case e:InterruptedException => interrupted = true
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt()
+  }
+
+  /**
+   * the source is taken from input, read ahead if it got to it, and its chars
+   * go back to input once parsed. lexing and parsing reuse the SourceParser
+   * of the current thread, which reports the syntax errors it recovers from
+   * to err. the translation is printed into a pooled buffer and handed to output, which
+   * writes it in one go, or for a source past the streaming threshold straight to output as it is
+   * printed, so its file is never held whole; the manifest and metrics hear of it once written,
+   * and unwritten of the sources whose output could not be. a source whose
+   * output path another source of the run has claimed is not written.
+   * with metrics set, the lexer is timed apart from the parser that drives it
+   */
+  private def translate(f:File, input:ReadAhead, untyped:Boolean, manifest:Manifest,
+                        output:OutputFiles, unwritten:ConcurrentHashMap[File, Throwable], claims:Claims):Translation = {
+    val m = if (null == metrics) null else new FileMetrics(f)
+    val allocated = if (null == m) 0L else FileMetrics.allocated()
+    var read = 0L
+    var skipped = false
+    var handedOver = false
+
+    try {
+      val source = input.take(f)
+      read = source.bytes.remaining()
+      if (null != m)
+        m.stallNanos = source.stallNanos()
+
+      val hash = if (null == manifest) null else Manifest.hash(source.bytes)
+      if (null != manifest && manifest.upToDate(f, hash, options(untyped), output.sink())) {
+        input.release(source)
+        val path = manifest.output(f)
+        if (!claims.claim(path, f))
+          throw new IOException(path + " is claimed by another source")
+        skipped = true
+        return Translation(f, read, true, None)
+      }
+
+      val parser = SourceParser.forCurrentThread(compact)
+      parser.setErrors(err)
+      val parsing = System.nanoTime()
+      val unit = try {
+        parser.parse(new CharArrayInputBuffer(source.chars, source.length), f.name, null != m)
+      } finally {
+        input.release(source)
+      }
+
+      val root = parser.astFactory().create(SourcePrinter.ROOT_ID,"AST ROOT")
+      root.setFirstChild(unit)
+
+      if (null != m) {
+        m.tokens = parser.tokens()
+        m.backtrackedTokens = parser.backtrackedTokens()
+        m.recalledPredicates = parser.recalledPredicates()
+        m.lexNanos = parser.lexNanos()
+        m.parseNanos = System.nanoTime() - parsing - m.lexNanos
+        m.nodes = nodes(unit)
+      }
+
+      val pkg = packageName(root)
+      val path = (if (pkg == "") "" else pkg.replace('.', '/') + "/") + getClassName(f) + ".scala"
+      if (!claims.claim(path, f))
+        throw new IOException(path + " is claimed by another source")
+
+      val streaming = output.streams(read)
+      val printing = System.nanoTime()
+      def printed(writing:Long) {
+        if (null != m) {
+          m.printNanos = System.nanoTime() - printing - writing
+          m.bytesRead = read
+          if (allocated >= 0)
+            m.allocatedBytes = FileMetrics.allocated() - allocated
+        }
+      }
+
+      val listener = new OutputFiles.Listener {
+        def written(path:String, bytes:Long, nanos:Long) {
+          if (streaming)
+            printed(nanos)
+          if (null != manifest) {
+            val previous = manifest.update(f, hash, options(untyped), path)
+            if (null != previous)
+              claims.abandon(previous)
+          }
+          if (null != m) {
+            m.bytesWritten = bytes
+            m.writeNanos = nanos
+            metrics.record(m)
+          }
+        }
+
+        def failed(path:String, e:IOException) {
+          if (streaming)
+            printed(0)
+          unwritten.put(f, e)
+          Jatran.this.failed(f, read, manifest, m, e)
+          if (null != m)
+            metrics.record(m)
+        }
+      }
+
+      if (streaming) {
+        output.stream(path, new OutputFiles.Content {
+          def writeTo(out:OutputStream) {
+            val o = new OutputStreamWriter(out)
+            new ScalaPrinter().print(root, o, untyped)
+            o.flush()
+          }
+        }, listener)
+        handedOver = true
+      } else {
+        val buffer = output.buffer()
+        try {
+          val o = new OutputStreamWriter(buffer)
+          new ScalaPrinter().print(root, o, untyped)
+          o.flush()
+        } catch {
+          case e:Throwable =>
+            output.release(buffer)
+            throw e
+        }
+        printed(0)
+
+        handedOver = true
+        output.write(path, buffer, listener)
+      }
+
+      Translation(f, read, false, None)
+    } catch {
+      // the batch is being stopped, not this source failing
+      case e:InterruptedException => throw e
+      case e:java.nio.channels.ClosedByInterruptException => throw e
+      case e:Exception => failed(f, read, manifest, m, e)
+      case e:StackOverflowError => failed(f, read, manifest, m, e)
+    } finally {
+      if (null != m && !skipped && !handedOver) {
+        m.bytesRead = read
+        if (allocated >= 0)
+          m.allocatedBytes = FileMetrics.allocated() - allocated
+        metrics.record(m)
+      }
+    }
+  }
+
+  /** a failed file is dropped from the manifest so the next run retries it */
+  private def failed(f:File, read:Long, manifest:Manifest, m:FileMetrics, e:Throwable):Translation = {
+    if (null != manifest)
+      manifest.remove(f)
+    if (null != m)
+      m.failed = true
+    Translation(f, read, false, Some(e))
+  }
+
+  /** everything besides the source that decides what a translation looks like */
+  private def options(untyped:Boolean) = "untyped=" + untyped + ",encoding=" + encoding.name()
+
+  /** the number of nodes in ast, its siblings and their subtrees, counted without recursing */
+  private def nodes(ast:AST):Long = {
+    var n = 0L
+    val pending = new java.util.ArrayList[AST]()
+    pending.add(ast)
+    while (!pending.isEmpty()) {
+      var sibling = pending.remove(pending.size() - 1)
+      while (null != sibling) {
+        n = n + 1
+        if (null != sibling.getFirstChild())
+          pending.add(sibling.getFirstChild())
+        sibling = sibling.getNextSibling()
+      }
+    }
+    n
+  }
+
+  /**
+   * the dotted name under the PACKAGE_DEF the parser produced, if any; the
+   * annotations and comments that may precede it are already out of the way
+   */
+  private def packageName(root:AST):String = {
+    var ast = root.getFirstChild()
+    while (null != ast && ast.getType() != JavaTokenTypes.PACKAGE_DEF)
+      ast = ast.getNextSibling()
+    
+    if (null == ast)
+      return ""
     
-    ""
+    var name = ast.getFirstChild()
+    while (null != name && name.getType() == JavaTokenTypes.ANNOTATIONS)
+      name = name.getNextSibling()
+    
+    qualifiedName(name)
+  }
+  
+  private def qualifiedName(ast:AST):String = {
+    if (null == ast)
+      ""
+    else if (ast.getType() == JavaTokenTypes.DOT)
+      qualifiedName(ast.getFirstChild()) + "." + qualifiedName(ast.getFirstChild().getNextSibling())
+    else
+      ast.getText()
   }
 
   private def getClassName(file:File):String = {
@@ -101,18 +673,86 @@ class Jatran {
   }
 }
 
-class RichFile(file: File) {
-  def flatten : Iterable[File] = 
-    Seq.single(file) ++ children.flatMap(child => new RichFile(child).flatten)
+object Jatran {
+  /** the java files in src that globs takes in: an archive if it ends in .zip or .jar, else a file or folder */
+  def sources(src:File, globs:Globs):Sources =
+    if (isArchive(src)) new ArchiveSources(src, globs) else new DirectorySources(src, globs)
 
-  def name = file.getName()
-  def lines = scala.io.Source.fromFile(file).getLines
-  
-  private def children = new Iterable[File] {
-    def elements = if (file.isDirectory) file.listFiles.elements else Iterator.empty
+  /** where to write to out: an archive if it ends in .zip or .jar, else a folder */
+  def sink(out:File):Sink =
+    if (isArchive(out)) new ArchiveSink(out) else new DirectorySink(out)
+
+  /** whether f names a zip or jar archive */
+  private[main] def isArchive(f:File) = {
+    val name = f.getName().toLowerCase()
+    name.endsWith(".zip") || name.endsWith(".jar")
+  }
+}
+
+/**
+ * the output paths the sources of a run translate to. two sources of the
+ * same package and class name would write the same file, the last to get
+ * there winning; instead only the first to claim a path writes it, and the
+ * run fails every source that claimed it once it is over. the outputs that
+ * sources were translated into before, and no longer are, are abandoned.
+ */
+private[main] class Claims {
+  private val owners = new ConcurrentHashMap[String, File]()
+  private val contested = new java.util.TreeMap[String, java.util.TreeSet[File]]()
+  private val left = new java.util.TreeSet[String]()
+
+  /** true if path is source's to write, no other source having claimed it */
+  def claim(path:String, source:File):Boolean = {
+    val owner = owners.putIfAbsent(path, source)
+    if (null == owner || owner == source)
+      return true
+    synchronized {
+      var claimants = contested.get(path)
+      if (null == claimants) {
+        claimants = new java.util.TreeSet[File]()
+        contested.put(path, claimants)
+      }
+      claimants.add(owner)
+      claimants.add(source)
+    }
+    false
+  }
+
+  /** records that a source no longer translates to path */
+  def abandon(path:String) {
+    synchronized {
+      left.add(path)
+    }
+  }
+
+  /** the paths abandoned that no source of the run claimed, in order */
+  def abandoned:List[String] = synchronized {
+    var all:List[String] = Nil
+    val it = left.iterator()
+    while (it.hasNext()) {
+      val path = it.next()
+      if (!owners.containsKey(path))
+        all = path :: all
+    }
+    all.reverse
+  }
+
+  /** the paths claimed by more than one source, with those sources, in order */
+  def collisions:List[(String, List[File])] = synchronized {
+    var all:List[(String, List[File])] = Nil
+    val it = contested.entrySet().iterator()
+    while (it.hasNext()) {
+      val e = it.next()
+      all = (e.getKey(), e.getValue().toArray(new Array[File](0)).toList) :: all
+    }
+    all.reverse
   }
 }
 
+class RichFile(file: File) {
+  def name = file.getName()
+}
+
 object RichFile {
   implicit def toRichFile(file: File) = new RichFile(file)
 }
@@ -0,0 +1,134 @@
+package jatran.main
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.file.{CopyOption, Files, StandardCopyOption}
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
+import jatran.io.Sink
+
+/**
+ * what a source was last translated from and into: the hash of its content,
+ * the translator version and options used, and the path of the output
+ * written, relative to the output folder
+ */
+case class ManifestEntry(source:String, hash:String, version:String, options:String, output:String)
+
+/**
+ * the record an incremental run keeps in its output folder of every source
+ * it translated, so the next run can skip the ones that have not changed.
+ * entries are looked up and updated by worker threads concurrently; the file
+ * is read once before a batch and written once after it.
+ */
+class Manifest(val file:File) {
+  private val entries = new ConcurrentHashMap[String, ManifestEntry]()
+  
+  if (file.isFile) {
+    val in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))
+    try {
+      var line = in.readLine()
+      while (null != line) {
+        line.split("\t") match {
+          case Array(source, hash, version, options, output) =>
+            entries.put(source, ManifestEntry(source, hash, version, options, output))
+          case _ =>
+        }
+        line = in.readLine()
+      }
+    } finally {
+      in.close()
+    }
+  }
+
+  /**
+   * true if source was last translated from the same content, by the same
+   * version with the same options, and its output is still in sink
+   */
+  def upToDate(source:File, hash:String, options:String, sink:Sink):Boolean = {
+    val e = entries.get(key(source))
+    null != e && e.hash == hash && e.version == Manifest.VERSION && e.options == options && sink.exists(e.output)
+  }
+
+  /** the output source was last translated into, or null */
+  def output(source:File):String = {
+    val e = entries.get(key(source))
+    if (null == e) null else e.output
+  }
+
+  /**
+   * records what source was translated from and into
+   * @returns the output it was translated into before, if another, or null
+   */
+  def update(source:File, hash:String, options:String, output:String):String = {
+    val previous = entries.put(key(source), ManifestEntry(key(source), hash, Manifest.VERSION, options, output))
+    if (null == previous || previous.output == output) null else previous.output
+  }
+
+  /** true if output is what some source was last translated into */
+  def isOutput(output:String):Boolean = {
+    val it = entries.values().iterator()
+    while (it.hasNext())
+      if (it.next().output == output)
+        return true
+    false
+  }
+
+  def remove(source:File) {
+    entries.remove(key(source))
+  }
+
+  /** drops the entries of the sources gone says are, returning their outputs */
+  def removeWhere(gone:File => Boolean):List[String] = {
+    var outputs:List[String] = Nil
+    val it = entries.values().iterator()
+    while (it.hasNext()) {
+      val e = it.next()
+      if (gone(new File(e.source))) {
+        entries.remove(e.source)
+        outputs = e.output :: outputs
+      }
+    }
+    outputs
+  }
+
+  def save() {
+    file.getParentFile().mkdirs()
+    val tmp = new File(file.getPath() + ".tmp")
+    val o = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"))
+    try {
+      val it = entries.values().iterator()
+      while (it.hasNext()) {
+        val e = it.next()
+        o.println(e.source + "\t" + e.hash + "\t" + e.version + "\t" + e.options + "\t" + e.output)
+      }
+    } finally {
+      o.close()
+    }
+    Manifest.replace(tmp, file)
+  }
+
+  private def key(source:File) = source.getAbsolutePath()
+}
+
+object Manifest {
+  /** the version of the translation, apart from the program's; bump when it changes, so every output is regenerated */
+  val VERSION = "0.2"
+
+  val NAME = ".jatran-manifest"
+
+  /** moves tmp over file in one step, so a reader sees either whole; fails rather than lose file */
+  def replace(tmp:File, file:File) {
+    Files.move(tmp.toPath(), file.toPath(), Array[CopyOption](StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING))
+  }
+
+  /** hex SHA-1 of the remaining bytes, leaving the buffer's position alone */
+  def hash(bytes:ByteBuffer):String = {
+    val digest = MessageDigest.getInstance("SHA-1")
+    digest.update(bytes.duplicate())
+    val sb = new StringBuilder
+    for (b <- digest.digest())
+      sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1))
+    sb.toString
+  }
+}
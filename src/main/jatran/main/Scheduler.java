@@ -0,0 +1,152 @@
+package jatran.main;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import jatran.io.Sources;
+
+/**
+ * Scheduler: hands the sources of a parallel run to the threads translating
+ * them, largest first, and no more at once than a heap budget allows.
+ *
+ * A translation in flight holds its source, decoded, and the tree parsed
+ * from it, which grows with the size of the source: about COST_PER_BYTE
+ * bytes of heap per byte of source, or COMPACT_COST_PER_BYTE with compact
+ * trees. A source is admitted once its estimate and those of the sources in
+ * flight fit in the budget; one too big to fit at all is admitted once
+ * nothing else is in flight, so it runs alone.
+ *
+ * Taking the largest source waiting first keeps a big file from being left
+ * for last, with every other thread idle while it is translated. Sources are
+ * added as discovery finds them; once it ends, the order the rest will be
+ * admitted in is known.
+ */
+public final class Scheduler {
+	/**
+	 * The heap a translation is estimated to take per byte of its source. =24
+	 */
+	public static final int COST_PER_BYTE = 24;
+
+	/**
+	 * The same, with trees built by a CompactASTFactory. =16
+	 */
+	public static final int COMPACT_COST_PER_BYTE = 16;
+
+	/**
+	 * @param budget the heap the translations in flight may take up between them
+	 * @param compact whether trees are built by a CompactASTFactory
+	 */
+	public Scheduler(final long budget, final boolean compact) {
+		this.budget = budget;
+		this.costPerByte = compact ? COMPACT_COST_PER_BYTE : COST_PER_BYTE;
+	}
+
+	/**
+	 * Adds a source to those waiting to be admitted.
+	 * @param bytes its size, or -1 if unknown
+	 */
+	public synchronized void add(final File source, final long bytes) {
+		waiting.add(new Waiting(source, Math.max(bytes, 0) * costPerByte, added++));
+		notifyAll();
+	}
+
+	/**
+	 * Tells the scheduler no more sources are coming, and hands those still
+	 * waiting to next in the order they will be admitted, before any of them
+	 * is.
+	 */
+	public synchronized void end(final Sources.Found next) {
+		ended = true;
+		Waiting[] left = waiting.toArray(new Waiting[waiting.size()]);
+		Arrays.sort(left);
+		for (Waiting w : left)
+			next.found(w.source);
+		notifyAll();
+	}
+
+	/**
+	 * Waits for the largest source waiting to fit in the budget.
+	 * @returns the source, now in flight until finished(), or null once
+	 * every source has been admitted
+	 */
+	public synchronized File admit() throws InterruptedException {
+		boolean throttling = false;
+		while (true) {
+			Waiting w = waiting.peek();
+			if (null == w) {
+				if (ended)
+					return null;
+			} else if (inFlight.isEmpty() || used + w.cost <= budget) {
+				waiting.poll();
+				inFlight.put(w.source, w.cost);
+				used += w.cost;
+				peak = Math.max(peak, used);
+				return w.source;
+			} else if (!throttling) {
+				throttling = true;
+				++throttled;
+			}
+			wait();
+		}
+	}
+
+	/**
+	 * Takes a source out of flight, freeing its share of the budget.
+	 */
+	public synchronized void finished(final File source) {
+		Long cost = inFlight.remove(source);
+		if (null != cost)
+			used -= cost;
+		notifyAll();
+	}
+
+	/**
+	 * @returns the number of times a source was held back to stay in the budget
+	 */
+	public synchronized int throttled() {
+		return throttled;
+	}
+
+	/**
+	 * @returns the most heap the translations in flight were estimated to take at once
+	 */
+	public synchronized long peak() {
+		return peak;
+	}
+
+	/**
+	 * A source waiting to be admitted; the largest come first, and of those
+	 * as large, the first added.
+	 */
+	private static final class Waiting implements Comparable<Waiting> {
+		Waiting(final File source, final long cost, final long order) {
+			this.source = source;
+			this.cost = cost;
+			this.order = order;
+		}
+
+		public int compareTo(final Waiting o) {
+			if (cost != o.cost)
+				return cost > o.cost ? -1 : 1;
+			return order < o.order ? -1 : order == o.order ? 0 : 1;
+		}
+
+		final File source;
+		final long cost;
+		final long order;
+	}
+
+	private final long budget;
+	private final int costPerByte;
+
+	private final PriorityQueue<Waiting> waiting = new PriorityQueue<Waiting>();
+	private final Map<File, Long> inFlight = new HashMap<File, Long>();
+	private long added;
+	private long used;
+	private long peak;
+	private int throttled;
+	private boolean ended;
+}
@@ -0,0 +1,206 @@
+package jatran.main
+
+import java.io._
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
+import java.nio.file.CopyOption
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileAttribute
+import java.nio.file.attribute.PosixFilePermissions
+import java.security.MessageDigest
+import java.security.SecureRandom
+import java.util.concurrent.Executors
+
+import jatran.io.MemorySink
+import jatran.io.MemorySources
+
+/**
+ * a resident jatran: warms up the lexer, parser and printer once, then runs
+ * the command lines Clients send it over a loopback socket, each on a thread
+ * of its own, until one of them asks it to stop. it announces its port and
+ * a random token in the daemon file, readable by its owner only, and
+ * ignores any request without the token.
+ */
+class Server(daemon:File) {
+  private val socket = new ServerSocket(0, 50, InetAddress.getByName(null))
+  private val token = {
+    val bytes = new Array[Byte](16)
+    new SecureRandom().nextBytes(bytes)
+    val sb = new StringBuilder
+    for (b <- bytes)
+      sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1))
+    sb.toString
+  }
+  private val handlers = Executors.newCachedThreadPool()
+
+  /** the port the server listens on */
+  def port = socket.getLocalPort()
+
+  /** warms up, announces the server and serves requests until asked to stop */
+  def serve() {
+    Server.warmUp()
+    announce()
+    try {
+      while (!socket.isClosed()) {
+        val client = try {
+          socket.accept()
+        } catch {
+          case e:SocketException => null // stopped
+        }
+        if (null != client)
+          handlers.execute(new Runnable {
+            def run() {
+              handle(client)
+            }
+          })
+      }
+    } finally {
+      handlers.shutdown()
+      daemon.delete()
+    }
+  }
+
+  /** stops taking requests; those being run are finished */
+  def stop() {
+    socket.close()
+  }
+
+  private def announce() {
+    daemon.delete()
+    val tmp = new File(daemon.getPath() + ".tmp")
+    Server.createPrivate(tmp)
+    val o = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"))
+    try {
+      o.println(port + " " + token)
+    } finally {
+      o.close()
+    }
+    Server.replace(tmp, daemon)
+  }
+
+  private def handle(client:Socket) {
+    try {
+      client.setSoTimeout(Server.REQUEST_TIMEOUT)
+      val request = new DataInputStream(new BufferedInputStream(client.getInputStream()))
+      val response = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()))
+
+      val sent = request.readUTF()
+      if (!MessageDigest.isEqual(sent.getBytes("UTF-8"), token.getBytes("UTF-8")))
+        return
+
+      val command = request.readUTF()
+      val cwd = new File(request.readUTF())
+      val args = new Array[String](request.readInt())
+      for (i <- List.range(0, args.length))
+        args(i) = request.readUTF()
+      client.setSoTimeout(0)
+
+      val out = new ByteArrayOutputStream()
+      val err = new ByteArrayOutputStream()
+      val status = if (command == Client.STOP) {
+        stop()
+        Client.OK
+      } else {
+        val o = new PrintStream(out, true)
+        val e = new PrintStream(err, true)
+        try {
+          Main.run(args, cwd, o, e)
+        } catch {
+          case x:Exception =>
+            e.println("jatran: " + x)
+            Client.NOT_RUN
+        } finally {
+          o.close()
+          e.close()
+        }
+      }
+
+      response.writeInt(status)
+      response.writeInt(out.size())
+      out.writeTo(response)
+      response.writeInt(err.size())
+      err.writeTo(response)
+      response.flush()
+    } catch {
+      case e:IOException => // the client went away; nothing to tell it
+    } finally {
+      client.close()
+    }
+  }
+}
+
+object Server {
+  /** creates file anew, readable and writable by its owner only from the start where the file system says so */
+  private def createPrivate(file:File) {
+    Files.deleteIfExists(file.toPath())
+    try {
+      Files.createFile(file.toPath(), Array[FileAttribute[_]](PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))))
+    } catch {
+      case e:UnsupportedOperationException =>
+        // no POSIX permissions; narrow them as far as the file system lets
+        new FileOutputStream(file).close()
+        file.setReadable(false, false)
+        file.setWritable(false, false)
+        file.setReadable(true, true)
+        file.setWritable(true, true)
+    }
+  }
+
+  /** moves tmp over file in one step, so a client reads either none or all of it */
+  private def replace(tmp:File, file:File) {
+    Files.move(tmp.toPath(), file.toPath(), Array[CopyOption](StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING))
+  }
+
+  /** how long a client may take to send its request, in milliseconds */
+  val REQUEST_TIMEOUT = 10000
+
+  /** the times the warm-up source is translated before serving */
+  val WARM_UP = 50
+
+  /** a source touching the common parts of the grammar and the printer */
+  private val WARM_UP_SOURCE = ("""
+      |package warm;
+      |
+      |import java.util.*;
+      |
+      |public class Warm<T extends Comparable<T>> implements Iterable<T> {
+      |  private static final int LIMIT = 1 << 4;
+      |  private final List<T> items = new ArrayList<T>();
+      |  enum Kind { A, B }
+      |
+      |  public Warm(T... ts) { for (T t : ts) items.add(t); }
+      |
+      |  @Override public Iterator<T> iterator() {
+      |    return new Iterator<T>() {
+      |      int i = 0;
+      |      public boolean hasNext() { return i < items.size() && i < LIMIT; }
+      |      public T next() { return items.get(i++); }
+      |      public void remove() { throw new UnsupportedOperationException(); }
+      |    };
+      |  }
+      |
+      |  int f(int x, Kind k) {
+      |    int s = 0;
+      |    switch (k) { case A: s += x * 2; break; default: s = x > 0 ? x : -x; }
+      |    while (s % 3 != 0 && s < 100) s = (s + 1) << 1;
+      |    try { s = Integer.parseInt("" + s) / (x == 0 ? 1 : x); }
+      |    catch (NumberFormatException e) { s = -1; }
+      |    finally { s++; }
+      |    return s + (items.isEmpty() ? 0 : items.get(0).hashCode());
+      |  }
+      |}
+      |""").stripMargin
+
+  /** translates a source in memory over and over, so the first request finds its code compiled */
+  def warmUp() {
+    val sources = new MemorySources()
+    sources.put("warm/Warm.java", WARM_UP_SOURCE)
+    val jatran = new Jatran()
+    jatran.readAhead = 0
+    for (i <- List.range(0, WARM_UP))
+      jatran.transform(sources, new MemorySink(), false, 1)
+  }
+}
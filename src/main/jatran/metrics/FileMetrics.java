@@ -0,0 +1,75 @@
+package jatran.metrics;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * FileMetrics: where the time went while translating one source.
+ *
+ * Lexing and parsing are interleaved, the parser pulling tokens as it goes,
+ * so lexNanos is the time spent inside the lexer and parseNanos the rest of
+ * the parse. printNanos is the time spent printing the translation into
+ * memory, and writeNanos the time spent writing that to the output file,
+ * opening and closing it included. allocatedBytes is what the translating
+ * thread allocated, or -1 where the JVM cannot tell. backtrackedTokens are
+ * the tokens the parser read while guessing syntactic predicates, and
+ * recalledPredicates the guesses it skipped for having made them before.
+ * stallNanos is the time the translating thread waited for the source to be
+ * read, or read it itself, because it had not been read ahead; it is not a
+ * stage of its own, the read being done by then.
+ */
+public final class FileMetrics {
+	public final File source;
+
+	public long bytesRead;
+	public long lexNanos;
+	public long parseNanos;
+	public long printNanos;
+	public long writeNanos;
+	public long stallNanos;
+	public long tokens;
+	public long backtrackedTokens;
+	public long recalledPredicates;
+	public long nodes;
+	public long bytesWritten;
+	public long allocatedBytes = -1;
+	public boolean failed;
+
+	public FileMetrics(final File source) {
+		this.source = source;
+	}
+
+	/**
+	 * @returns the time spent on this source in all stages
+	 */
+	public long totalNanos() {
+		return lexNanos + parseNanos + printNanos + writeNanos;
+	}
+
+	/**
+	 * @returns the bytes the current thread has allocated so far, or -1 if
+	 * the JVM does not keep count
+	 */
+	public static long allocated() {
+		if (THREADS == null)
+			return -1;
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	private static com.sun.management.ThreadMXBean threads() {
+		try {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (threads instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+				if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled())
+					return hotspot;
+			}
+		} catch (LinkageError e) {
+			// not a HotSpot JVM
+		}
+		return null;
+	}
+}
@@ -0,0 +1,10 @@
+package jatran.metrics;
+
+/**
+ * Metrics: receives the FileMetrics of every source a translation run
+ * finishes, successful or not. Sources are translated in parallel, so
+ * implementations must be thread safe.
+ */
+public interface Metrics {
+	void record(FileMetrics file);
+}
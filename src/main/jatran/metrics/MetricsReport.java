@@ -0,0 +1,217 @@
+package jatran.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MetricsReport: keeps the FileMetrics of every source and their totals,
+ * and writes them out as JSON or CSV, one entry per source. The totals can
+ * also be watched over JMX while a batch runs, once register() is called.
+ */
+public class MetricsReport implements Metrics, MetricsReportMBean {
+	public static final String OBJECT_NAME = "jatran:type=MetricsReport";
+
+	public synchronized void record(final FileMetrics file) {
+		files.add(file);
+		total.bytesRead += file.bytesRead;
+		total.tokens += file.tokens;
+		total.backtrackedTokens += file.backtrackedTokens;
+		total.recalledPredicates += file.recalledPredicates;
+		total.nodes += file.nodes;
+		total.bytesWritten += file.bytesWritten;
+		total.lexNanos += file.lexNanos;
+		total.parseNanos += file.parseNanos;
+		total.printNanos += file.printNanos;
+		total.writeNanos += file.writeNanos;
+		total.stallNanos += file.stallNanos;
+		if (file.stallNanos > 0)
+			++stalls;
+		if (file.failed)
+			++failures;
+		if (slowest == null || file.totalNanos() > slowest.totalNanos())
+			slowest = file;
+	}
+
+	/**
+	 * @returns a copy of the metrics recorded so far, in the order they came in
+	 */
+	public synchronized List<FileMetrics> files() {
+		return new ArrayList<FileMetrics>(files);
+	}
+
+	public synchronized int getFiles() { return files.size(); }
+	public synchronized int getFailures() { return failures; }
+	public synchronized long getBytesRead() { return total.bytesRead; }
+	public synchronized long getTokens() { return total.tokens; }
+	public synchronized long getBacktrackedTokens() { return total.backtrackedTokens; }
+	public synchronized long getRecalledPredicates() { return total.recalledPredicates; }
+	public synchronized long getNodes() { return total.nodes; }
+	public synchronized long getBytesWritten() { return total.bytesWritten; }
+	public synchronized long getLexMillis() { return total.lexNanos / 1000000; }
+	public synchronized long getParseMillis() { return total.parseNanos / 1000000; }
+	public synchronized long getPrintMillis() { return total.printNanos / 1000000; }
+	public synchronized long getWriteMillis() { return total.writeNanos / 1000000; }
+	public synchronized int getStalls() { return stalls; }
+	public synchronized long getStallMillis() { return total.stallNanos / 1000000; }
+
+	/**
+	 * @returns the bytes written per second spent writing, or 0 before any
+	 */
+	public synchronized long getWriteBytesPerSecond() {
+		return total.writeNanos == 0 ? 0 : (long) (total.bytesWritten * 1e9 / total.writeNanos);
+	}
+
+	public synchronized String getSlowestSource() {
+		return slowest == null ? null : slowest.source.getPath();
+	}
+
+	/**
+	 * Registers this report with the platform MBean server as OBJECT_NAME,
+	 * replacing any report registered before it.
+	 */
+	public void register() throws JMException {
+		register(OBJECT_NAME);
+	}
+
+	/**
+	 * Registers this report with the platform MBean server under name,
+	 * replacing any report registered there before it, until unregister().
+	 * Reports of runs going on at once in one JVM each take a name of
+	 * their own.
+	 */
+	public void register(final String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (MetricsReport.class) {
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			server.registerMBean(this, objectName);
+		}
+		synchronized (this) {
+			registered = objectName;
+		}
+	}
+
+	/**
+	 * Takes this report back from the MBean server, if registered.
+	 */
+	public void unregister() throws JMException {
+		ObjectName objectName;
+		synchronized (this) {
+			objectName = registered;
+			registered = null;
+		}
+		if (null == objectName)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (InstanceNotFoundException e) {
+			// unregistered already
+		}
+	}
+
+	/**
+	 * Writes the report to a file, as CSV if its name ends in .csv and as
+	 * JSON otherwise.
+	 */
+	public void write(final File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			if (file.getName().endsWith(".csv"))
+				writeCsv(out);
+			else
+				writeJson(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public synchronized void writeCsv(final Writer out) throws IOException {
+		out.write("source,failed,bytesRead,tokens,backtrackedTokens,recalledPredicates,nodes,bytesWritten,allocatedBytes,lexNanos,parseNanos,printNanos,writeNanos,stallNanos\n");
+		for (FileMetrics f : files) {
+			out.write(csv(f.source.getPath()));
+			out.write("," + f.failed + "," + f.bytesRead + "," + f.tokens + "," + f.backtrackedTokens
+					+ "," + f.recalledPredicates + "," + f.nodes + "," + f.bytesWritten
+					+ "," + f.allocatedBytes + "," + f.lexNanos + "," + f.parseNanos + "," + f.printNanos
+					+ "," + f.writeNanos + "," + f.stallNanos + "\n");
+		}
+	}
+
+	public synchronized void writeJson(final Writer out) throws IOException {
+		out.write("{\n  \"files\": " + files.size() + ",\n  \"failures\": " + failures + ",\n  \"total\": ");
+		writeJson(out, total, "  ");
+		out.write(",\n  \"writeBytesPerSecond\": " + getWriteBytesPerSecond());
+		out.write(",\n  \"stalls\": " + stalls);
+		out.write(",\n  \"sources\": [");
+		String sep = "\n    ";
+		for (FileMetrics f : files) {
+			out.write(sep);
+			writeJson(out, f, "    ");
+			sep = ",\n    ";
+		}
+		out.write("\n  ]\n}\n");
+	}
+
+	private static void writeJson(final Writer out, final FileMetrics f, final String indent) throws IOException {
+		String in = "\n" + indent + "  ";
+		out.write("{");
+		if (f.source != null)
+			out.write(in + "\"source\": " + json(f.source.getPath()) + "," + in + "\"failed\": " + f.failed + ",");
+		out.write(in + "\"bytesRead\": " + f.bytesRead);
+		out.write("," + in + "\"tokens\": " + f.tokens);
+		out.write("," + in + "\"backtrackedTokens\": " + f.backtrackedTokens);
+		out.write("," + in + "\"recalledPredicates\": " + f.recalledPredicates);
+		out.write("," + in + "\"nodes\": " + f.nodes);
+		out.write("," + in + "\"bytesWritten\": " + f.bytesWritten);
+		if (f.source != null)
+			out.write("," + in + "\"allocatedBytes\": " + f.allocatedBytes);
+		out.write("," + in + "\"lexNanos\": " + f.lexNanos);
+		out.write("," + in + "\"parseNanos\": " + f.parseNanos);
+		out.write("," + in + "\"printNanos\": " + f.printNanos);
+		out.write("," + in + "\"writeNanos\": " + f.writeNanos);
+		out.write("," + in + "\"stallNanos\": " + f.stallNanos);
+		out.write("\n" + indent + "}");
+	}
+
+	private static String json(final String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < ' ')
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	private static String csv(final String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+			return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private final List<FileMetrics> files = new ArrayList<FileMetrics>();
+
+	/**
+	 * The sums over every source; it has no source of its own.
+	 */
+	private final FileMetrics total = new FileMetrics(null);
+	private int failures;
+	private int stalls;
+	private FileMetrics slowest;
+	private ObjectName registered;
+}
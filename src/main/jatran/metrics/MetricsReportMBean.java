@@ -0,0 +1,31 @@
+package jatran.metrics;
+
+/**
+ * MetricsReportMBean: the running totals of a MetricsReport, as JMX sees them.
+ */
+public interface MetricsReportMBean {
+	int getFiles();
+	int getFailures();
+	long getBytesRead();
+	long getTokens();
+	long getBacktrackedTokens();
+	long getRecalledPredicates();
+	long getNodes();
+	long getBytesWritten();
+	long getLexMillis();
+	long getParseMillis();
+	long getPrintMillis();
+	long getWriteMillis();
+	long getWriteBytesPerSecond();
+
+	/**
+	 * @returns the number of sources that were not read ahead of their translation
+	 */
+	int getStalls();
+	long getStallMillis();
+
+	/**
+	 * @returns the path of the source that took longest so far
+	 */
+	String getSlowestSource();
+}
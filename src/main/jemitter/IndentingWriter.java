@@ -0,0 +1,177 @@
+package jemitter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The buffered counterpart of IndentingPrintStream.
+ *
+ * Text is collected in one reusable char array and handed to the underlying
+ * Writer in large chunks, so a compilation unit costs a handful of writes
+ * instead of one synchronized PrintStream call per token. Embedded newlines
+ * are found with a loop over the string rather than by splitting and
+ * recursing, and the indent string for each depth is built only once.
+ *
+ * Like a PrintWriter, it never throws; an I/O failure is remembered and
+ * reported by checkError().
+ */
+public class IndentingWriter extends Writer {
+	/**
+	 * The default number of chars buffered before writing through. =16384
+	 */
+	public static final int DEFAULT_BUFFER_LENGTH = 16384;
+
+	public IndentingWriter(Writer out) {
+		this(out, "  ");
+	}
+
+	public IndentingWriter(Writer out, String indent) {
+		this(out, indent, DEFAULT_BUFFER_LENGTH);
+	}
+
+	public IndentingWriter(Writer out, String indent, int bufferLength) {
+		this.out = out;
+		this.buf = new char[bufferLength];
+		setIndent(indent);
+	}
+
+	public void setIndent(String indent) {
+		this.indent = indent;
+		this.indents = new String[] { "" };
+	}
+
+	public void increaseIndent() {
+		depth++;
+	}
+
+	public void decreaseIndent() {
+		depth--;
+	}
+
+	public int indent() {
+		return depth;
+	}
+
+	public void println() {
+		append(NEWLINE, 0, NEWLINE.length());
+		indentPending = true;
+	}
+
+	public void print(Object o) {
+		if (null == o)
+			return;
+		print(o.toString());
+	}
+
+	/**
+	 * Prints s, indenting the start of every line it begins.
+	 */
+	public void print(String s) {
+		int len = s.length();
+		int from = 0;
+
+		while (from < len) {
+			if (indentPending) {
+				String prefix = indentation(depth);
+				append(prefix, 0, prefix.length());
+				indentPending = false;
+			}
+
+			int index = s.indexOf('\n', from);
+			if (index == -1) {
+				append(s, from, len);
+				return;
+			}
+
+			append(s, from, index);
+			println();
+			from = index + 1;
+		}
+	}
+
+	@Override public void write(char[] cbuf, int off, int len) {
+		print(new String(cbuf, off, len));
+	}
+
+	@Override public void write(String s) {
+		print(s);
+	}
+
+	/**
+	 * Writes out whatever is buffered and flushes the underlying Writer.
+	 */
+	@Override public void flush() {
+		drain();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			error = true;
+		}
+	}
+
+	@Override public void close() {
+		if (closed)
+			return;
+		flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			error = true;
+		}
+		closed = true;
+	}
+
+	/**
+	 * @returns true if writing to the underlying Writer has failed
+	 */
+	public boolean checkError() {
+		return error;
+	}
+
+	private void append(String s, int from, int to) {
+		while (from < to) {
+			if (count == buf.length)
+				drain();
+			int n = Math.min(to - from, buf.length - count);
+			s.getChars(from, from + n, buf, count);
+			count += n;
+			from += n;
+		}
+	}
+
+	private void drain() {
+		if (count == 0 || closed)
+			return;
+		try {
+			out.write(buf, 0, count);
+		} catch (IOException e) {
+			error = true;
+		}
+		count = 0;
+	}
+
+	private String indentation(int depth) {
+		if (depth <= 0)
+			return "";
+		if (depth >= indents.length) {
+			String[] grown = new String[Math.max(depth + 1, 2 * indents.length)];
+			System.arraycopy(indents, 0, grown, 0, indents.length);
+			for (int i = indents.length; i < grown.length; i++)
+				grown[i] = grown[i - 1] + indent;
+			indents = grown;
+		}
+		return indents[depth];
+	}
+
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	private final Writer out;
+	private final char[] buf;
+	private int count = 0;
+	private String indent;
+	private String[] indents;
+	private int depth = 0;
+	private boolean indentPending = false;
+	private boolean error = false;
+	private boolean closed = false;
+}
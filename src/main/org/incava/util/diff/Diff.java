@@ -1,12 +1,11 @@
 package org.incava.util.diff;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -49,11 +48,6 @@ public class Diff {
 	 */
 	private Comparator<Object> comparator;
 
-	/**
-	 * The thresholds.
-	 */
-	private TreeMap<Integer, Integer> thresh;
-
 	/**
 	 * Constructs the Diff object for the two arrays, using the given comparator.
 	 */
@@ -61,7 +55,6 @@ public class Diff {
 		this.a = a;
 		this.b = b;
 		this.comparator = comp;
-		this.thresh = null; // created in getLongestCommonSubsequences
 	}
 
 	/**
@@ -111,7 +104,7 @@ public class Diff {
 	 * <code>onANotB</code>, and <code>onBNotA</code>.
 	 */
 	protected void traverseSequences() {
-		Integer[] matches = getLongestCommonSubsequences();
+		int[] matches = longestCommonSubsequence();
 
 		int lastA = a.length - 1;
 		int lastB = b.length - 1;
@@ -121,12 +114,12 @@ public class Diff {
 		int lastMatch = matches.length - 1;
 
 		for (ai = 0; ai <= lastMatch; ++ai) {
-			Integer bLine = matches[ai];
+			int bLine = matches[ai];
 
-			if (bLine == null) {
+			if (bLine == NONE) {
 				onANotB(ai, bi);
 			} else {
-				while (bi < bLine.intValue()) {
+				while (bi < bLine) {
 					onBNotA(ai, bi++);
 				}
 
@@ -249,199 +242,207 @@ public class Diff {
 	 * Returns an array of the longest common subsequences.
 	 */
 	public Integer[] getLongestCommonSubsequences() {
+		int[] matches = longestCommonSubsequence();
+		Integer[] ary = new Integer[matches.length];
+
+		for (int ai = 0; ai < matches.length; ++ai) {
+			if (matches[ai] != NONE) {
+				ary[ai] = Integer.valueOf(matches[ai]);
+			}
+		}
+		return ary;
+	}
+
+	/**
+	 * Returns, for each element of <code>a</code> up to the last one that is
+	 * part of the longest common subsequence, the index of the element of
+	 * <code>b</code> it is matched with, or <code>NONE</code>.
+	 *
+	 * <p>This is Hunt-Szymanski on primitives: the elements of <code>b</code>
+	 * are numbered by equivalence class, with each class's positions packed in
+	 * one int array; the thresholds are an int array searched in place, and the
+	 * links of the candidate chains are int triples in one growing array.</p>
+	 *
+	 * <p>A link is replaced whenever a later match lowers its threshold, and
+	 * with many repeated elements most links are soon out of every chain.
+	 * Before the array grows, the links no threshold reaches any more are
+	 * compacted away, so it holds about as many as the chains do.</p>
+	 */
+	protected int[] longestCommonSubsequence() {
 		int aStart = 0;
 		int aEnd = a.length - 1;
 
 		int bStart = 0;
 		int bEnd = b.length - 1;
 
-		TreeMap<Integer, Integer> matches = new TreeMap<Integer, Integer>();
+		int[] matches = new int[a.length];
+		Arrays.fill(matches, NONE);
+		int size = 0;
 
 		while (aStart <= aEnd && bStart <= bEnd && equals(a[aStart], b[bStart])) {
-			matches.put(new Integer(aStart++), new Integer(bStart++));
+			size = aStart + 1;
+			matches[aStart++] = bStart++;
+		}
+
+		if (aStart <= aEnd && bStart <= bEnd && equals(a[aEnd], b[bEnd])) {
+			size = aEnd + 1;
 		}
 
 		while (aStart <= aEnd && bStart <= bEnd && equals(a[aEnd], b[bEnd])) {
-			matches.put(new Integer(aEnd--), new Integer(bEnd--));
+			matches[aEnd--] = bEnd--;
 		}
 
-		Map<Object, List<Integer>> bMatches = null;
+		Map<Object, Integer> classes = newClassMap();
 
-		if (comparator == null) {
-			if (a.length > 0 && a[0] instanceof Comparable) {
-				// this uses the Comparable interface
-				bMatches = new TreeMap<Object, List<Integer>>();
-			} else {
-				// this just uses hashCode()
-				bMatches = new HashMap<Object, List<Integer>>();
-			}
-		} else {
-			// we don't really want them sorted, but this is the only Map
-			// implementation (as of JDK 1.4) that takes a comparator.
-			bMatches = new TreeMap<Object, List<Integer>>(comparator);
-		}
+		// number the elements of b by equivalence class, then lay the
+		// positions of each class out contiguously, in ascending order.
+		int bLength = bEnd - bStart + 1;
+		int[] bClass = new int[Math.max(bLength, 0)];
+		int[] counts = new int[16];
 
 		for (int bi = bStart; bi <= bEnd; ++bi) {
-			Object element = b[bi];
-			Object key = element;
-			List<Integer> positions = bMatches.get(key);
+			Integer id = classes.get(b[bi]);
 
-			if (positions == null) {
-				positions = new ArrayList<Integer>();
-				bMatches.put(key, positions);
+			if (id == null) {
+				id = Integer.valueOf(classes.size());
+				classes.put(b[bi], id);
+				if (id.intValue() == counts.length) {
+					counts = Arrays.copyOf(counts, 2 * counts.length);
+				}
 			}
-			positions.add(new Integer(bi));
+			bClass[bi - bStart] = id.intValue();
+			++counts[id.intValue()];
+		}
+
+		int[] first = new int[classes.size() + 1];
+		for (int c = 0; c < classes.size(); ++c) {
+			first[c + 1] = first[c] + counts[c];
+		}
+
+		int[] positions = new int[Math.max(bLength, 0)];
+		int[] fill = Arrays.copyOf(first, classes.size());
+		for (int bi = bStart; bi <= bEnd; ++bi) {
+			positions[fill[bClass[bi - bStart]]++] = bi;
 		}
 
-		thresh = new TreeMap<Integer, Integer>();
-		Map<Integer, Object[]> links = new HashMap<Integer, Object[]>();
+		int[] thresh = new int[Math.max(Math.min(aEnd - aStart + 1, bLength), 0) + 1];
+		int[] threshLink = new int[thresh.length];
+		int threshSize = 0;
+
+		// link n is links[3n .. 3n+2]: previous link (or NONE), a index, b index
+		int[] links = new int[3 * 64];
+		int linkCount = 0;
 
 		for (int i = aStart; i <= aEnd; ++i) {
-			Object aElement = a[i]; // keygen here.
-			List<Integer> positions = bMatches.get(aElement);
+			Integer id = classes.get(a[i]);
+
+			if (id == null) {
+				continue;
+			}
 
-			if (positions != null) {
-				Integer k = new Integer(0);
-				ListIterator<Integer> pit = positions.listIterator(positions
-						.size());
-				while (pit.hasPrevious()) {
-					Integer j = (Integer) pit.previous();
+			for (int p = first[id.intValue() + 1] - 1; p >= first[id.intValue()]; --p) {
+				int j = positions[p];
+
+				// first threshold not less than j:
+				int lo = 0;
+				int hi = threshSize - 1;
 
-					k = insert(j, k);
+				while (lo <= hi) {
+					int index = (hi + lo) >>> 1;
 
-					if (k == null) {
-						// nothing
+					if (thresh[index] < j) {
+						lo = index + 1;
 					} else {
-						Object value = k.intValue() > 0 ? links
-								.get(new Integer(k.intValue() - 1)) : null;
-						links.put(k, new Object[] { value, new Integer(i), j });
+						hi = index - 1;
 					}
 				}
-			}
-		}
 
-		if (thresh.size() > 0) {
-			Integer ti = (Integer) thresh.lastKey();
-			Object[] link = (Object[]) links.get(ti);
-			while (link != null) {
-				Integer x = (Integer) link[1];
-				Integer y = (Integer) link[2];
-				matches.put(x, y);
-				link = (Object[]) link[0];
+				if (lo < threshSize && thresh[lo] == j) {
+					continue;
+				}
+
+				thresh[lo] = j;
+				if (lo == threshSize) {
+					++threshSize;
+				}
+
+				if (3 * linkCount + 3 > links.length) {
+					linkCount = compact(links, linkCount, threshLink, threshSize);
+					if (3 * linkCount + 3 > links.length / 2) {
+						links = Arrays.copyOf(links, 2 * links.length);
+					}
+				}
+				links[3 * linkCount] = lo > 0 ? threshLink[lo - 1] : NONE;
+				links[3 * linkCount + 1] = i;
+				links[3 * linkCount + 2] = j;
+				threshLink[lo] = linkCount++;
 			}
 		}
 
-		return toArray(matches);
-	}
+		if (threshSize > 0) {
+			int link = threshLink[threshSize - 1];
+			size = Math.max(size, links[3 * link + 1] + 1);
 
-	/**
-	 * Converts the map (indexed by java.lang.Integers) into an array.
-	 */
-	protected static Integer[] toArray(TreeMap<Integer, Integer> map) {
-		int size = map.size() == 0 ? 0 : 1 + ((Integer) map.lastKey())
-				.intValue();
-		Integer[] ary = new Integer[size];
-		Iterator<Integer> it = map.keySet().iterator();
-
-		while (it.hasNext()) {
-			Integer idx = (Integer) it.next();
-			Integer val = (Integer) map.get(idx);
-			ary[idx.intValue()] = val;
+			while (link != NONE) {
+				matches[links[3 * link + 1]] = links[3 * link + 2];
+				link = links[3 * link];
+			}
 		}
-		return ary;
-	}
 
-	/**
-	 * Returns whether the integer is not zero (including if it is not null).
-	 */
-	protected static boolean isNonzero(Integer i) {
-		return i != null && i.intValue() != 0;
-	}
-
-	/**
-	 * Returns whether the value in the map for the given index is greater than
-	 * the given value.
-	 */
-	protected boolean isGreaterThan(Integer index, Integer val) {
-		Integer lhs = (Integer) thresh.get(index);
-		return lhs != null && val != null && lhs.compareTo(val) > 0;
+		return size == matches.length ? matches : Arrays.copyOf(matches, size);
 	}
 
 	/**
-	 * Returns whether the value in the map for the given index is less than
-	 * the given value.
+	 * Drops the links that are in none of the chains ending at the
+	 * thresholds, moving the rest down in order and renumbering them.
+	 * Returns the number of links left.
 	 */
-	protected boolean isLessThan(Integer index, Integer val) {
-		Integer lhs = (Integer) thresh.get(index);
-		return lhs != null && (val == null || lhs.compareTo(val) < 0);
-	}
+	private static int compact(int[] links, int linkCount, int[] threshLink, int threshSize) {
+		boolean[] live = new boolean[linkCount];
+		for (int t = 0; t < threshSize; ++t) {
+			for (int link = threshLink[t]; link != NONE && !live[link]; link = links[3 * link]) {
+				live[link] = true;
+			}
+		}
 
-	/**
-	 * Returns the value for the greatest key in the map.
-	 */
-	protected Integer getLastValue() {
-		return (Integer) thresh.get(thresh.lastKey());
-	}
+		// a link only points to one made before it, already moved
+		int[] moved = new int[linkCount];
+		int count = 0;
+		for (int link = 0; link < linkCount; ++link) {
+			if (live[link]) {
+				int previous = links[3 * link];
+				links[3 * count] = previous == NONE ? NONE : moved[previous];
+				links[3 * count + 1] = links[3 * link + 1];
+				links[3 * count + 2] = links[3 * link + 2];
+				moved[link] = count++;
+			}
+		}
 
-	/**
-	 * Adds the given value to the "end" of the threshold map, that is, with the
-	 * greatest index/key.
-	 */
-	protected void append(Integer value) {
-		Integer addIdx = null;
-		if (thresh.size() == 0) {
-			addIdx = new Integer(0);
-		} else {
-			Integer lastKey = (Integer) thresh.lastKey();
-			addIdx = new Integer(lastKey.intValue() + 1);
+		for (int t = 0; t < threshSize; ++t) {
+			threshLink[t] = moved[threshLink[t]];
 		}
-		thresh.put(addIdx, value);
+		return count;
 	}
 
 	/**
-	 * Inserts the given values into the threshold map.
+	 * Returns an empty map keyed by the elements, which considers two
+	 * elements the same key when this diff considers them equal.
 	 */
-	protected Integer insert(Integer j, Integer k) {
-		if (isNonzero(k) && isGreaterThan(k, j)
-				&& isLessThan(new Integer(k.intValue() - 1), j)) {
-			thresh.put(k, j);
-		} else {
-			int hi = -1;
-
-			if (isNonzero(k)) {
-				hi = k.intValue();
-			} else if (thresh.size() > 0) {
-				hi = ((Integer) thresh.lastKey()).intValue();
-			}
-
-			// off the end?
-			if (hi == -1 || j.compareTo(getLastValue()) > 0) {
-				append(j);
-				k = new Integer(hi + 1);
+	protected Map<Object, Integer> newClassMap() {
+		if (comparator == null) {
+			if (a.length > 0 && a[0] instanceof Comparable) {
+				// this uses the Comparable interface
+				return new TreeMap<Object, Integer>();
 			} else {
-				// binary search for insertion point:
-				int lo = 0;
-
-				while (lo <= hi) {
-					int index = (hi + lo) / 2;
-					Integer val = (Integer) thresh.get(new Integer(index));
-					int cmp = j.compareTo(val);
-
-					if (cmp == 0) {
-						return null;
-					} else if (cmp > 0) {
-						lo = index + 1;
-					} else {
-						hi = index - 1;
-					}
-				}
-
-				thresh.put(new Integer(lo), j);
-				k = new Integer(lo);
+				// this just uses hashCode()
+				return new HashMap<Object, Integer>();
 			}
+		} else {
+			// we don't really want them sorted, but this is the only Map
+			// implementation (as of JDK 1.4) that takes a comparator.
+			return new TreeMap<Object, Integer>(comparator);
 		}
-
-		return k;
 	}
 
+	protected static final int NONE = Difference.NONE;
 }
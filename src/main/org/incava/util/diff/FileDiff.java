@@ -3,59 +3,103 @@ package org.incava.util.diff;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Diffs two text files line by line and prints the differences in the
+ * format of diff(1).
+ *
+ * <p>The files are streamed rather than loaded: a first pass reduces every
+ * line to an int fingerprint and <code>MyersDiff</code> matches the two
+ * fingerprint arrays. A second pass reads both files again in step with the
+ * matches, keeping only the text of the hunk being printed. That pass also
+ * compares the text of every matched pair, so lines whose fingerprints
+ * merely collide are reported as changed rather than silently equal.</p>
+ */
 public class FileDiff {
-	public final List<Difference> diffs;
+	public final List<Difference> diffs = new ArrayList<Difference>();
 
-	public FileDiff(String fromFile, String toFile) {
+	public FileDiff(String fromFile, String toFile) throws IOException {
 		this(new File(fromFile), new File(toFile));
 	}
 
-	public FileDiff(File f1, File f2) {
+	public FileDiff(File f1, File f2) throws IOException {
 		this(f1, f2, true);
 	}
-	
-	public FileDiff(File f1, File f2, Boolean newlines) {
-		String[] aLines = read(f1, newlines);
-		String[] bLines = read(f2, newlines);
-		
-		diffs = (new Diff(aLines, bLines)).diff();
-		
-		Iterator<Difference> it = diffs.iterator();
-		
-		while (it.hasNext()) {
-			Difference diff = (Difference) it.next();
-			int delStart = diff.getDeletedStart();
-			int delEnd = diff.getDeletedEnd();
-			int addStart = diff.getAddedStart();
-			int addEnd = diff.getAddedEnd();
-			String from = toString(delStart, delEnd);
-			String to = toString(addStart, addEnd);
-			String type = delEnd != Difference.NONE
-					&& addEnd != Difference.NONE ? "c"
-					: (delEnd == Difference.NONE ? "a" : "d");
-
-			System.out.println(from + type + to);
-
-			if (delEnd != Difference.NONE) {
-				printLines(delStart, delEnd, "<", aLines);
-				if (addEnd != Difference.NONE) {
-					System.out.println("---");
+
+	public FileDiff(File f1, File f2, Boolean newlines) throws IOException {
+		this(f1, f2, newlines, new OutputStreamWriter(System.out));
+	}
+
+	/**
+	 * @param newlines whether blank lines take part in the comparison
+	 * @param sink where the differences are printed; flushed, not closed
+	 */
+	public FileDiff(File f1, File f2, Boolean newlines, Writer sink) throws IOException {
+		this.newlines = newlines;
+		this.out = new PrintWriter(sink);
+
+		int[] aPrints = fingerprints(f1);
+		int[] bPrints = fingerprints(f2);
+		int[] matches = MyersDiff.match(aPrints, bPrints);
+
+		BufferedReader aReader = new BufferedReader(new FileReader(f1));
+		BufferedReader bReader = new BufferedReader(new FileReader(f2));
+
+		try {
+			int bi = 0;
+
+			for (int ai = 0; ai < aPrints.length; ++ai) {
+				int bLine = ai < matches.length ? matches[ai] : Difference.NONE;
+
+				if (bLine == Difference.NONE) {
+					onANotB(ai, bi, next(aReader));
+					continue;
+				}
+
+				while (bi < bLine) {
+					onBNotA(ai, bi, next(bReader));
+					++bi;
+				}
+
+				String aLine = next(aReader);
+				String bText = next(bReader);
+
+				if (aLine.equals(bText)) {
+					flush();
+				} else {
+					onANotB(ai, bi, aLine);
+					onBNotA(ai, bi, bText);
 				}
+				++bi;
 			}
-			if (addEnd != Difference.NONE) {
-				printLines(addStart, addEnd, ">", bLines);
+
+			while (bi < bPrints.length) {
+				onBNotA(aPrints.length, bi, next(bReader));
+				++bi;
 			}
+
+			flush();
+		} finally {
+			aReader.close();
+			bReader.close();
+			out.flush();
+		}
+
+		if (out.checkError()) {
+			throw new IOException("error writing differences");
 		}
 	}
-	
 
-	protected void printLines(int start, int end, String ind, String[] lines) {
-		for (int lnum = start; lnum <= end; ++lnum) {
-			System.out.println(ind + " " + lines[lnum]);
+	protected void printLines(String ind, List<String> lines) {
+		for (String line : lines) {
+			out.println(ind + " " + line);
 		}
 	}
 
@@ -73,26 +117,115 @@ public class FileDiff {
 		return buf.toString();
 	}
 
-	private String[] read(File file, Boolean newlines) {
+	private void onANotB(int ai, int bi, String line) {
+		if (pending == null) {
+			pending = new Difference(ai, ai, bi, -1);
+		} else {
+			pending.setDeleted(ai);
+		}
+		deleted.add(line);
+	}
+
+	private void onBNotA(int ai, int bi, String line) {
+		if (pending == null) {
+			pending = new Difference(ai, -1, bi, bi);
+		} else {
+			pending.setAdded(bi);
+		}
+		added.add(line);
+	}
+
+	/**
+	 * Prints the pending hunk, if any, and forgets its text.
+	 */
+	private void flush() {
+		if (pending == null) {
+			return;
+		}
+
+		int delStart = pending.getDeletedStart();
+		int delEnd = pending.getDeletedEnd();
+		int addStart = pending.getAddedStart();
+		int addEnd = pending.getAddedEnd();
+		String from = toString(delStart, delEnd);
+		String to = toString(addStart, addEnd);
+		String type = delEnd != Difference.NONE
+				&& addEnd != Difference.NONE ? "c"
+				: (delEnd == Difference.NONE ? "a" : "d");
+
+		out.println(from + type + to);
+
+		if (delEnd != Difference.NONE) {
+			printLines("<", deleted);
+			if (addEnd != Difference.NONE) {
+				out.println("---");
+			}
+		}
+		if (addEnd != Difference.NONE) {
+			printLines(">", added);
+		}
+
+		diffs.add(pending);
+		pending = null;
+		deleted.clear();
+		added.clear();
+	}
+
+	/**
+	 * @returns the fingerprint of every line that takes part in the comparison
+	 */
+	private int[] fingerprints(File file) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(file));
+
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(file));
-			List<String> contents = new ArrayList<String>();
+			int[] prints = new int[1024];
+			int count = 0;
 			String in;
-			while ((in = br.readLine()) != null) {
-				if (newlines || !(!newlines && "".equals(in.trim())))
-					contents.add(in.trim());
+
+			while ((in = next(br)) != null) {
+				if (count == prints.length) {
+					prints = Arrays.copyOf(prints, 2 * prints.length);
+				}
+				prints[count++] = in.hashCode();
 			}
-			return contents.toArray(new String[] {});
-		} catch (Exception e) {
-			System.err.println("error reading " + file.getName() + ": " + e);
-			System.exit(1);
-			return null;
+			return Arrays.copyOf(prints, count);
+		} finally {
+			br.close();
 		}
 	}
 
+	/**
+	 * @returns the next line that takes part in the comparison, trimmed, or
+	 * null at the end of the file
+	 */
+	private String next(BufferedReader br) throws IOException {
+		String in;
+		while ((in = br.readLine()) != null) {
+			in = in.trim();
+			if (newlines || !"".equals(in))
+				return in;
+		}
+		return null;
+	}
+
+	private final boolean newlines;
+	private final PrintWriter out;
+
+	/**
+	 * The hunk being collected, and the text of its lines.
+	 */
+	private Difference pending;
+	private final List<String> deleted = new ArrayList<String>();
+	private final List<String> added = new ArrayList<String>();
+
 	public static void main(String[] args) {
 		if (args.length == 2) {
-			new FileDiff(args[0], args[1]);
+			try {
+				new FileDiff(args[0], args[1]);
+			} catch (IOException e) {
+				System.err.println("error reading " + args[0] + " or " + args[1] + ": " + e);
+				System.exit(1);
+			}
 		} else {
 			System.err.println("usage: org.incava.diffj.FileDiff from-file to-file");
 		}
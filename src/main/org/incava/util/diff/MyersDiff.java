@@ -0,0 +1,231 @@
+package org.incava.util.diff;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A <code>Diff</code> that finds the common subsequence with Myers' O(ND)
+ * algorithm instead of Hunt-Szymanski, and returns the same kind of
+ * <code>Difference</code> list.
+ *
+ * <p>Hunt-Szymanski does work for every pair of equal elements, so it slows
+ * down badly when the inputs repeat the same few lines (blank lines, lone
+ * braces) many times. Myers' cost depends only on the lengths and on the
+ * number of differences D, which suits two similar versions of a file. This
+ * is the linear space variant: each step finds the middle snake of the
+ * remaining edit graph and recurses on either side of it.</p>
+ *
+ * <p>Both algorithms find a longest common subsequence, but where there is
+ * more than one they may pick different ones.</p>
+ */
+public class MyersDiff extends Diff {
+	public MyersDiff(Object[] a, Object[] b, Comparator<Object> comp) {
+		super(a, b, comp);
+	}
+
+	public MyersDiff(Object[] a, Object[] b) {
+		super(a, b);
+	}
+
+	public MyersDiff(Collection<Object> a, Collection<Object> b,
+			Comparator<Object> comp) {
+		super(a, b, comp);
+	}
+
+	public MyersDiff(Collection<Object> a, Collection<Object> b) {
+		super(a, b);
+	}
+
+	@Override protected int[] longestCommonSubsequence() {
+		Map<Object, Integer> classes = newClassMap();
+
+		int[] bs = new int[b.length];
+		for (int bi = 0; bi < b.length; ++bi) {
+			Integer id = classes.get(b[bi]);
+
+			if (id == null) {
+				id = Integer.valueOf(classes.size());
+				classes.put(b[bi], id);
+			}
+			bs[bi] = id.intValue();
+		}
+
+		// elements of a that are not in b match nothing
+		int[] as = new int[a.length];
+		for (int ai = 0; ai < a.length; ++ai) {
+			Integer id = classes.get(a[ai]);
+			as[ai] = id == null ? -1 : id.intValue();
+		}
+
+		return match(as, bs);
+	}
+
+	/**
+	 * Runs the algorithm on two sequences already reduced to ints, such as
+	 * line fingerprints, where equal ints count as equal elements.
+	 * @returns for each element of <code>as</code> up to the last matched
+	 * one, the index of its match in <code>bs</code> or <code>NONE</code>
+	 */
+	public static int[] match(int[] as, int[] bs) {
+		return new Engine(as, bs).run();
+	}
+
+	private static class Engine {
+		/**
+		 * The two sequences.
+		 */
+		private final int[] as;
+		private final int[] bs;
+
+		/**
+		 * The forward and reverse furthest reaching x for each diagonal,
+		 * shared by every step of the recursion.
+		 */
+		private final int[] vf;
+		private final int[] vb;
+
+		private final int[] matches;
+
+		Engine(int[] as, int[] bs) {
+			this.as = as;
+			this.bs = bs;
+
+			int max = (as.length + bs.length + 1) / 2;
+			vf = new int[2 * max + 2];
+			vb = new int[2 * max + 2];
+
+			matches = new int[as.length];
+			Arrays.fill(matches, NONE);
+		}
+
+		int[] run() {
+			compare(0, as.length, 0, bs.length);
+
+			int size = matches.length;
+			while (size > 0 && matches[size - 1] == NONE) {
+				--size;
+			}
+
+			return size == matches.length ? matches : Arrays.copyOf(matches, size);
+		}
+
+		/**
+		 * Matches up a[aLo, aHi) with b[bLo, bHi).
+		 */
+		private void compare(int aLo, int aHi, int bLo, int bHi) {
+			while (aLo < aHi && bLo < bHi && as[aLo] == bs[bLo]) {
+				matches[aLo++] = bLo++;
+			}
+
+			while (aLo < aHi && bLo < bHi && as[aHi - 1] == bs[bHi - 1]) {
+				matches[--aHi] = --bHi;
+			}
+
+			if (aLo == aHi || bLo == bHi) {
+				return;
+			}
+
+			int n = aHi - aLo;
+			int m = bHi - bLo;
+			int max = (n + m + 1) / 2;
+			int offset = max;
+			int length = 2 * max;
+
+			Arrays.fill(vf, 0, length, -1);
+			Arrays.fill(vb, 0, length, -1);
+			vf[offset + 1] = 0;
+			vb[offset + 1] = 0;
+
+			int delta = n - m;
+			// with an odd delta the paths meet on a forward step, otherwise on a
+			// reverse one.
+			boolean front = (delta & 1) != 0;
+
+			// diagonals that ran off the edge of the graph are not revisited:
+			int fStart = 0;
+			int fEnd = 0;
+			int bStart = 0;
+			int bEnd = 0;
+
+			for (int d = 0; d < max; ++d) {
+				for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+					int kOffset = offset + k;
+					int x;
+
+					if (k == -d || (k != d && vf[kOffset - 1] < vf[kOffset + 1])) {
+						x = vf[kOffset + 1];
+					} else {
+						x = vf[kOffset - 1] + 1;
+					}
+
+					int y = x - k;
+					while (x < n && y < m && as[aLo + x] == bs[bLo + y]) {
+						++x;
+						++y;
+					}
+					vf[kOffset] = x;
+
+					if (x > n) {
+						fEnd += 2;
+					} else if (y > m) {
+						fStart += 2;
+					} else if (front) {
+						int rOffset = offset + delta - k;
+
+						if (rOffset >= 0 && rOffset < length && vb[rOffset] != -1 && x >= n - vb[rOffset]) {
+							split(aLo, aHi, bLo, bHi, x, y);
+							return;
+						}
+					}
+				}
+
+				for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+					int kOffset = offset + k;
+					int x;
+
+					if (k == -d || (k != d && vb[kOffset - 1] < vb[kOffset + 1])) {
+						x = vb[kOffset + 1];
+					} else {
+						x = vb[kOffset - 1] + 1;
+					}
+
+					int y = x - k;
+					while (x < n && y < m && as[aHi - x - 1] == bs[bHi - y - 1]) {
+						++x;
+						++y;
+					}
+					vb[kOffset] = x;
+
+					if (x > n) {
+						bEnd += 2;
+					} else if (y > m) {
+						bStart += 2;
+					} else if (!front) {
+						int fOffset = offset + delta - k;
+
+						if (fOffset >= 0 && fOffset < length && vf[fOffset] != -1) {
+							int fx = vf[fOffset];
+
+							if (fx >= n - x) {
+								split(aLo, aHi, bLo, bHi, fx, offset + fx - fOffset);
+								return;
+							}
+						}
+					}
+				}
+			}
+
+			// nothing in common
+		}
+
+		/**
+		 * Recurses on both sides of the point (x, y), relative to (aLo, bLo).
+		 */
+		private void split(int aLo, int aHi, int bLo, int bHi, int x, int y) {
+			compare(aLo, aLo + x, bLo, bLo + y);
+			compare(aLo + x, aHi, bLo + y, bHi);
+		}
+	}
+}
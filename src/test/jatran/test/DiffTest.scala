@@ -85,6 +85,26 @@ class DiffTest extends  TestNGSuite {
     runDiff(a, b, expected)
   }
 
+  // every third line is the same, as closing braces are in code; the links
+  // replaced on the way must not pile up
+  @Test def testManyRepeatedLinesInBoundedHeap() {
+    val n = 9000
+    val a = new Array[Object](n)
+    val b = new Array[Object](n)
+    for (i <- List.range(0, n)) {
+      a(i) = if (i % 3 == 0) "}" else "a" + i
+      b(i) = if (i % 3 == 0) "}" else "b" + i
+    }
+
+    val allocated = jatran.metrics.FileMetrics.allocated()
+    val diffs = new Diff(a, b).diff()
+    val used = jatran.metrics.FileMetrics.allocated() - allocated
+
+    assertEquals("diffs", n / 3, diffs.size())
+    if (allocated >= 0)
+      assertTrue("allocated " + (used >> 20) + "MB", used < (100L << 20))
+  }
+
   @Test def testReallyBig() {
     val a:Array[Object] = List("A", "B", "C", "D", "E", "F", "G", "A", "H", "I", "J", "D", "K", "L", "C", "G", "M", "H", "N", "J", "I", "K", "O", "C", "G", "M", "P", "Q", "J", "R", "K", "S", "C", "C", "F", "G", "D", "T", "N", "G", "M", "U", "V", "J", "Q", "K", "W", "C", "G", "M", "X", "C", "V", "K", "Y", "C", "G", "G", "A", "Z", "AA", "J", "C", "Z", "G", "V", "K", "BB", "C", "G", "M", "CC", "DD", "J", "EE", "K", "FF", "C", "AA", "G", "M", "GG", "K", "HH", "C", "DD", "G", "M", "II", "II", "II").toArray
     val b:Array[Object] = List("A", "B", "C", "JJ", "G", "A", "II", "KK", "A", "B", "C", "D", "E", "F", "G", "A", "H", "I", "J", "D", "K", "L", "C", "G", "M", "H", "N", "J", "I", "K", "O", "C", "G", "M", "P", "Q", "J", "R", "K", "S", "C", "C", "F", "G", "D", "T", "N", "G", "M", "U", "V", "J", "Q", "K", "W", "C", "G", "M", "X", "C", "V", "K", "Y", "C", "G", "G", "A", "Z", "AA", "J", "C", "Z", "G", "V", "K", "BB", "C", "G", "M", "CC", "DD", "J", "EE", "K", "FF", "C", "AA", "G", "M", "GG", "K", "HH", "C", "DD", "G", "M", "II", "II", "II", "II").toArray
@@ -106,6 +126,78 @@ class DiffTest extends  TestNGSuite {
     runDiff(a, b, expected)
   }
 
+  @Test def testMyersStrings1() {
+    val a:Array[Object] = List("a", "b", "c", "e", "h", "j", "l", "m", "n", "p").toArray
+    val b:Array[Object] = List("b", "c", "d", "e", "f", "j", "k", "l", "m", "r", "s", "t").toArray
+    val expected:Array[Difference] = List(new Difference(0, 0, 0, -1), 
+                                          new Difference(3, -1, 2, 2), 
+                                          new Difference(4, 4, 4, 4), 
+                                          new Difference(6, -1, 6, 6), 
+                                          new Difference(8, 9, 9, 11)).toArray
+    runDiff(new MyersDiff(a, b), expected)
+  }
+
+  @Test def testMyersLongArray() {
+    val a:Array[Object] = List("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l").toArray
+    val b:Array[Object] = List("a", "b", "p", "q", "r", "s", "t", "c", "d", "e", "f", "g", "h", "i", "j", "u", "l").toArray
+    val expected:Array[Difference] = List(new Difference(2, -1, 2, 6), new Difference(10, 10, 15, 15)).toArray
+    runDiff(new MyersDiff(a, b), expected)
+  }
+
+  @Test def testMyersBlanks() {
+    val a:Array[Object] = List("same", "same", "same", "", "same", "del", "", "del").toArray
+    val b:Array[Object] = List("ins", "", "same", "same", "same", "", "same").toArray
+    val expected:Array[Difference] = List(new Difference(0, -1, 0, 1), new Difference(5, 7, 7, -1)).toArray
+    runDiff(new MyersDiff(a, b), expected)
+  }
+
+  // more than one LCS here; Myers may pick another one, but it must be as long
+  @Test def testMyersRepeated() {
+    val a:Array[Object] = List("a", "a", "a", "a", "b", "b", "b", "a", "a", "a", "a", "b", "b", "b", "a", "a", "a", "a", "b", "b", "b", "a", "a", "a", "a", "b", "b", "b").toArray
+    val b:Array[Object] = List("a", "a", "a", "a", "b", "b", "b", "a", "b", "b", "b", "a", "a", "a", "a").toArray
+    assertEquals("edits", edits(new Diff(a, b).diff()), edits(new MyersDiff(a, b).diff()))
+  }
+
+  @Test def testMyersReallyBig() {
+    val a:Array[Object] = List("A", "B", "C", "D", "E", "F", "G", "A", "H", "I", "J", "D", "K", "L", "C", "G", "M", "H", "N", "J", "I", "K", "O", "C", "G", "M", "P", "Q", "J", "R", "K", "S", "C", "C", "F", "G", "D", "T", "N", "G", "M", "U", "V", "J", "Q", "K", "W", "C", "G", "M", "X", "C", "V", "K", "Y", "C", "G", "G", "A", "Z", "AA", "J", "C", "Z", "G", "V", "K", "BB", "C", "G", "M", "CC", "DD", "J", "EE", "K", "FF", "C", "AA", "G", "M", "GG", "K", "HH", "C", "DD", "G", "M", "II", "II", "II").toArray
+    val b:Array[Object] = List("A", "B", "C", "JJ", "G", "A", "II", "KK", "A", "B", "C", "D", "E", "F", "G", "A", "H", "I", "J", "D", "K", "L", "C", "G", "M", "H", "N", "J", "I", "K", "O", "C", "G", "M", "P", "Q", "J", "R", "K", "S", "C", "C", "F", "G", "D", "T", "N", "G", "M", "U", "V", "J", "Q", "K", "W", "C", "G", "M", "X", "C", "V", "K", "Y", "C", "G", "G", "A", "Z", "AA", "J", "C", "Z", "G", "V", "K", "BB", "C", "G", "M", "CC", "DD", "J", "EE", "K", "FF", "C", "AA", "G", "M", "GG", "K", "HH", "C", "DD", "G", "M", "II", "II", "II", "II").toArray
+    assertEquals("edits", edits(new Diff(a, b).diff()), edits(new MyersDiff(a, b).diff()))
+  }
+
+  // "Aa" and "BB" have the same hashCode, so only the text comparison tells them apart
+  @Test def testFileDiffCollidingLines() {
+    val a = java.io.File.createTempFile("filediff", ".txt")
+    val b = java.io.File.createTempFile("filediff", ".txt")
+    a.deleteOnExit()
+    b.deleteOnExit()
+    write(a, "x\nAa\ny\n")
+    write(b, "x\nBB\ny\n")
+
+    val sink = new java.io.StringWriter()
+    val diff = new FileDiff(a, b, true, sink)
+
+    assertEquals("diffs", 1, diff.diffs.size())
+    assertEquals(new Difference(1, 1, 1, 1), diff.diffs.get(0))
+    assertEquals("2c2\n< Aa\n---\n> BB\n", sink.toString().replace(System.getProperty("line.separator"), "\n"))
+  }
+
+  private def write(f:java.io.File, s:String) {
+    val w = new java.io.FileWriter(f)
+    try { w.write(s) } finally { w.close() }
+  }
+
+  protected def edits(diffs:JavaList[Difference]):int = {
+    var n = 0
+    for (i <- 0 until diffs.size()) {
+      val d = diffs.get(i)
+      if (d.getDeletedEnd() != Difference.NONE)
+        n = n + d.getDeletedEnd() - d.getDeletedStart() + 1
+      if (d.getAddedEnd() != Difference.NONE)
+        n = n + d.getAddedEnd() - d.getAddedStart() + 1
+    }
+    n
+  }
+
   protected def assertLCS(a:Array[Object], b:Array[Object], expected:Array[Integer]) {
     val diff:Diff = new Diff(a, b)
 
@@ -0,0 +1,630 @@
+package jatran.test
+
+import java.io.{ByteArrayOutputStream, File, FileInputStream, FileOutputStream, FileWriter, PrintStream, StringWriter}
+import java.lang.management.ManagementFactory
+import java.nio.file.{Files, LinkOption}
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.Arrays
+import java.util.zip.{ZipEntry, ZipFile, ZipOutputStream}
+import javax.management.ObjectName
+import org.testng.annotations._
+import scalax.io.Implicits._
+
+import org.scalatest.testng.TestNGSuite
+
+import jatran.core.{ScalaPrinter, SourcePrinter}
+import jatran.io.{Globs, MemorySink, MemorySources}
+import jatran.lexing.{CharArrayInputBuffer, SourceParser}
+import jatran.main.{Client, Jatran, Main, Scheduler, Server}
+import jatran.metrics.{FileMetrics, MetricsReport}
+
+import org.incava.util.diff._
+
+class JatranTest extends  TestNGSuite {
+  /** a fresh folder for what the tests write, removed once they are done */
+  val scratch = {
+    val f = File.createTempFile("jatran", "-test")
+    f.delete()
+    f.mkdirs()
+    f
+  }
+  val stub = new File("src/stub/jatran/stub")
+  val pstub = new File(tmp("parallel/jatran/stub"))
+  
+  @Test def parallelRunMatchesTheStubs {
+    val results = new Jatran().transform(new File("src/stub"), tmp("parallel"), false, 4)
+    
+    assert(results.forall(!_.failed))
+    assert(results.forall(r => r.bytesRead == r.source.length()), "every source is read exactly once")
+    assert(results.map(_.source.getPath()) == results.map(_.source.getPath()).sort(_ < _), "results are sorted")
+    
+    for (r <- results) {
+      val name = r.source.getName().replace(".java", ".scala")
+      val diff = new FileDiff(stub/name, pstub/name, false)
+      assert(0 == diff.diffs.size(), name + " differs")
+    }
+  }
+  
+  @Test def compactTreesTranslateLikeTheStubs {
+    val jatran = new Jatran()
+    jatran.compact = true
+    val results = jatran.transform(new File("src/stub"), tmp("compact"), false, 2)
+    
+    assert(results.forall(!_.failed))
+    for (r <- results) {
+      val name = r.source.getName().replace(".java", ".scala")
+      assert(0 == new FileDiff(stub/name, new File(tmp("compact/jatran/stub"))/name, false).diffs.size(), name + " differs")
+    }
+  }
+  
+  @Test def longChainsPrintOnASmallStack {
+    val src = new StringBuilder("class Deep { String s = \"x\"")
+    for (i <- List.range(0, 5000))
+      src.append(" + \"a" + i + "\"")
+    src.append("; Object f(StringBuilder b) { return b")
+    for (i <- List.range(0, 2000))
+      src.append(".append(" + i + ")")
+    src.append("; } }")
+    
+    var out:String = null
+    val printing = new Thread(null, new Runnable {
+      def run() {
+        out = translate(src.toString)
+      }
+    }, "deep", 256 * 1024)
+    printing.start()
+    printing.join()
+    
+    assert(null != out, "printing overflowed the stack")
+    assert(out.contains("\"x\" + \"a0\" + \"a1\"") && out.contains("+ \"a4999\""))
+    assert(out.contains("return b.append(0).append(1)") && out.contains(".append(1999)"))
+  }
+  
+  @Test def wideClassesSortTheirMembers {
+    val src = new StringBuilder("class Wide implements A, B, C {")
+    for (i <- List.range(0, 40))
+      src.append(if (i % 2 == 0) " static int s" + i + ";" else " int f" + i + ";")
+    src.append(" Wide() {} }")
+    
+    val out = translate(src.toString)
+    val companion = out.indexOf("object Wide")
+    
+    assert(out.startsWith("class Wide extends A with B with C {"), out)
+    assert(out.indexOf("def this()") < out.indexOf("var f1"), "the constructor comes first")
+    assert(companion > out.lastIndexOf("var f39") && companion < out.indexOf("var s0"), "statics go to the object")
+  }
+  
+  @Test def aFailingWriterFailsThePrint {
+    val parser = new SourceParser()
+    val root = parser.astFactory().create(SourcePrinter.ROOT_ID, "AST ROOT")
+    root.setFirstChild(parser.parse(new CharArrayInputBuffer("class Failing { int i; }"), "Failing.java", false))
+    val failing = new java.io.Writer {
+      def write(cbuf:Array[Char], off:Int, len:Int) { throw new java.io.IOException("disk full") }
+      def flush() {}
+      def close() {}
+    }
+    
+    val failed = try {
+      new ScalaPrinter().print(root, failing)
+      false
+    } catch {
+      case e:java.io.IOException => true
+    }
+    assert(failed, "the failure to write is not lost")
+  }
+  
+  @Test def aBrokenFileDoesNotAbortTheBatch {
+    val src = new File(tmp("broken/src"))
+    src.mkdirs()
+    write(new File(src, "Broken.java"), "package broken;\n\npublic class Broken { # }\n")
+    write(new File(src, "Fine.java"), "package broken;\n\npublic class Fine { }\n")
+    
+    val results = new Jatran().transform(src, tmp("broken/out"), false, 2)
+    
+    assert(2 == results.length)
+    assert(results.filter(_.failed).map(_.source.getName()) == List("Broken.java"))
+    assert(new File(tmp("broken/out/broken/Fine.scala")).isFile)
+  }
+  
+  @Test def sourcesTranslatingToTheSameFileAllFail {
+    val src = new File(tmp("clash/src"))
+    for (d <- List("a", "b"))
+      new File(src, d).mkdirs()
+    write(new File(src, "a/X.java"), "package p;\n\npublic class X { int a; }\n")
+    write(new File(src, "b/X.java"), "package p;\n\npublic class X { int b; }\n")
+    write(new File(src, "b/Y.java"), "package p;\n\npublic class Y { }\n")
+    
+    for (threads <- List(1, 4)) {
+      val out = tmp("clash/out") + threads
+      val results = new Jatran().transform(src, out, false, threads)
+      
+      assert(results.filter(_.failed).map(_.source.getName()) == List("X.java", "X.java"), threads + " threads")
+      assert(results.exists(r => r.failed && r.error.get.getMessage().endsWith("b" + File.separator + "X.java")))
+      assert(!new File(out + "/p/X.scala").exists(), "neither wins")
+      assert(new File(out + "/p/Y.scala").isFile)
+    }
+  }
+  
+  @Test def packageComesFromTheParsedCompilationUnit {
+    val src = new File(tmp("annotated/src"))
+    src.mkdirs()
+    write(new File(src, "Annotated.java"), "/* package not.this; */\n@Deprecated\npackage a.b.c;\n\npublic class Annotated { }\n")
+    
+    new Jatran().transform(src, tmp("annotated/out"), false, 1)
+    
+    assert(new File(tmp("annotated/out/a/b/c/Annotated.scala")).isFile)
+  }
+  
+  @Test def incrementalRunSkipsUnchangedSources {
+    val src = new File(tmp("incremental/src"))
+    src.mkdirs()
+    write(new File(src, "Kept.java"), "package inc;\n\npublic class Kept { }\n")
+    write(new File(src, "Edited.java"), "package inc;\n\npublic class Edited { }\n")
+    
+    val jatran = new Jatran()
+    jatran.incremental = true
+    
+    val first = jatran.transform(src, tmp("incremental/out"), false, 1)
+    assert(first.forall(r => !r.failed && !r.skipped))
+    
+    write(new File(src, "Edited.java"), "package inc;\n\npublic class Edited { int i; }\n")
+    val second = jatran.transform(src, tmp("incremental/out"), false, 2)
+    assert(second.filter(_.skipped).map(_.source.getName()) == List("Kept.java"))
+    
+    new File(tmp("incremental/out/inc/Kept.scala")).delete()
+    val third = jatran.transform(src, tmp("incremental/out"), true, 1)
+    assert(third.forall(!_.skipped), "changed options and missing outputs are translated again")
+    assert(new File(tmp("incremental/out/inc/Kept.scala")).isFile)
+    
+    write(new File(src, "Edited.java"), "package moved;\n\npublic class Edited { int i; }\n")
+    jatran.transform(src, tmp("incremental/out"), true, 1)
+    assert(new File(tmp("incremental/out/moved/Edited.scala")).isFile)
+    assert(!new File(tmp("incremental/out/inc/Edited.scala")).exists(), "the output of the old package is deleted")
+  }
+  
+  @Test def metricsAreRecordedForEverySource {
+    val report = new MetricsReport()
+    val jatran = new Jatran()
+    jatran.metrics = report
+    
+    val results = jatran.transform(new File("src/stub"), tmp("metrics"), false, 2)
+    
+    assert(results.length == report.getFiles())
+    assert(0 == report.getFailures())
+    for (m <- report.files().toArray(new Array[FileMetrics](0))) {
+      val name = m.source.getName().replace(".java", ".scala")
+      assert(m.bytesRead == m.source.length())
+      assert(m.tokens > 0 && m.nodes > 0, name + " has no tokens or nodes")
+      assert(m.bytesWritten == new File(tmp("metrics/jatran/stub/") + name).length(), name + " bytes written")
+    }
+    
+    val csv = new StringWriter()
+    report.writeCsv(csv)
+    assert(results.length + 1 == csv.toString.split("\n").length)
+    
+    val json = new StringWriter()
+    report.writeJson(json)
+    assert(json.toString.contains("\"tokens\": " + report.getTokens()))
+  }
+  
+  @Test def writeBehindMatchesTheStubs {
+    val report = new MetricsReport()
+    val jatran = new Jatran()
+    jatran.writeBehind = true
+    jatran.metrics = report
+    
+    val results = jatran.transform(new File("src/stub"), tmp("behind"), false, 2)
+    
+    assert(results.forall(!_.failed))
+    assert(results.length == report.getFiles(), "every source is recorded once written")
+    assert(report.getWriteBytesPerSecond() > 0)
+    for (r <- results) {
+      val name = r.source.getName().replace(".java", ".scala")
+      assert(0 == new FileDiff(stub/name, new File(tmp("behind/jatran/stub"))/name, false).diffs.size(), name + " differs")
+    }
+  }
+  
+  @Test def streamedFilesMatchTheStubs {
+    val report = new MetricsReport()
+    val jatran = new Jatran()
+    jatran.writeBehind = true
+    jatran.streamed = 0
+    jatran.metrics = report
+    
+    val results = jatran.transform(new File("src/stub"), tmp("streamed"), false, 2)
+    
+    assert(results.forall(!_.failed))
+    for (m <- report.files().toArray(new Array[FileMetrics](0))) {
+      val name = m.source.getName().replace(".java", ".scala")
+      assert(0 == new FileDiff(stub/name, new File(tmp("streamed/jatran/stub"))/name, false).diffs.size(), name + " differs")
+      assert(m.bytesWritten == new File(tmp("streamed/jatran/stub/") + name).length(), name + " bytes written")
+    }
+  }
+  
+  @Test def anInterruptStopsTheBatch {
+    var stopped = false
+    val translating = new Thread(new Runnable {
+      def run() {
+        val jatran = new Jatran()
+        jatran.writeBehind = true
+        Thread.currentThread().interrupt()
+        try {
+          jatran.transform(new File("src/stub"), tmp("interrupted"), false, 1)
+        } catch {
+          case e:InterruptedException => stopped = true
+          case e:java.nio.channels.ClosedByInterruptException => stopped = true
+        }
+      }
+    })
+    translating.start()
+    translating.join()
+    
+    assert(stopped, "the interrupt is not taken for a failed source")
+  }
+  
+  @Test def anUnwritableOutputFailsItsSource {
+    val src = new File(tmp("unwritable/src"))
+    src.mkdirs()
+    write(new File(src, "Blocked.java"), "package blocked;\n\npublic class Blocked { }\n")
+    write(new File(src, "Free.java"), "package blocked;\n\npublic class Free { }\n")
+    // a directory where the output file should go
+    new File(tmp("unwritable/out/blocked/Blocked.scala/keep")).mkdirs()
+    
+    for ((behind, streamed) <- List((false, false), (true, false), (true, true))) {
+      val jatran = new Jatran()
+      jatran.writeBehind = behind
+      if (streamed)
+        jatran.streamed = 0
+      val results = jatran.transform(src, tmp("unwritable/out"), false, 1)
+      
+      assert(results.filter(_.failed).map(_.source.getName()) == List("Blocked.java"), "write-behind " + behind + ", streamed " + streamed)
+      assert(new File(tmp("unwritable/out/blocked/Free.scala")).isFile)
+    }
+  }
+  
+  @Test def globsPickTheSourcesFoundInParallel {
+    val src = new File(tmp("globs/src"))
+    for (d <- List("a/gen", "b/test", "c/d/e"))
+      new File(src, d).mkdirs()
+    for (f <- List("a/A.java", "a/gen/G.java", "b/B.java", "b/BTest.java", "b/test/T.java", "c/d/e/E.java", "c/notes.txt"))
+      write(new File(src, f), "package " + f.substring(0, f.lastIndexOf('/')).replace('/', '.') + ";\n\nclass " + new File(f).getName().replace(".java", "").replace(".txt", "") + " { }\n")
+    
+    val jatran = new Jatran()
+    jatran.globs = new Globs(Array("a/**", "b/*.java", "**/E.java"), Array("**/gen/**", "**/*Test.java"))
+    
+    for (threads <- List(1, 3)) {
+      val results = jatran.transform(src, tmp("globs/out") + threads, false, threads)
+      
+      assert(results.forall(!_.failed))
+      assert(results.map(_.source.getName()).sort(_ < _) == List("A.java", "B.java", "E.java"), threads + " threads")
+      assert(new File(tmp("globs/out") + threads + "/c/d/e/E.scala").isFile)
+    }
+  }
+  
+  @Test def inMemoryRunMatchesAFolderRun {
+    val sources = new MemorySources()
+    for (f <- stub.listFiles(); if f.getName().endsWith(".java"))
+      sources.put("jatran/stub/" + f.getName(), bytes(f))
+    val sink = new MemorySink()
+    
+    val results = new Jatran().transform(sources, sink, false, 2)
+    new Jatran().transform(new File("src/stub"), tmp("memory"), false, 1)
+    
+    assert(results.length > 0 && results.forall(!_.failed))
+    assert(results.length == sink.files().size())
+    for (r <- results) {
+      val path = "jatran/stub/" + r.source.getName().replace(".java", ".scala")
+      assert(Arrays.equals(bytes(new File(tmp("memory/") + path)), sink.get(path)), path + " differs")
+    }
+  }
+  
+  @Test def archivesTranslateLikeFolders {
+    new File(tmp("archive")).mkdirs()
+    val zip = new ZipOutputStream(new FileOutputStream(tmp("archive/stub.zip")))
+    try {
+      for (f <- stub.listFiles(); if f.getName().endsWith(".java")) {
+        zip.putNextEntry(new ZipEntry("jatran/stub/" + f.getName()))
+        zip.write(bytes(f))
+        zip.closeEntry()
+      }
+    } finally {
+      zip.close()
+    }
+    
+    val results = new Jatran().transform(new File(tmp("archive/stub.zip")), tmp("archive/stub.jar"), false, 2)
+    new Jatran().transform(new File("src/stub"), tmp("archive/out"), false, 1)
+    
+    assert(results.length > 0 && results.forall(!_.failed))
+    val jar = new ZipFile(tmp("archive/stub.jar"))
+    try {
+      assert(results.length == jar.size())
+      for (r <- results) {
+        val path = "jatran/stub/" + r.source.getName().replace(".java", ".scala")
+        val entry = jar.getEntry(path)
+        assert(null != entry, path + " is missing")
+        val in = jar.getInputStream(entry)
+        val content = new Array[Byte](entry.getSize().toInt)
+        var n = 0
+        while (n < content.length)
+          n = n + in.read(content, n, content.length - n)
+        in.close()
+        assert(Arrays.equals(bytes(new File(tmp("archive/out/") + path)), content), path + " differs")
+      }
+    } finally {
+      jar.close()
+    }
+  }
+  
+  @Test def aFailedDiscoveryStopsTheWorkers {
+    val memory = new MemorySources()
+    for (i <- List.range(0, 300))
+      memory.put("d" + i + "/D.java", "package d" + i + ";\n\nclass D { int i; }\n")
+    val failing = new jatran.io.Sources {
+      def list() = memory.list()
+      def read(f:File) = memory.read(f)
+      def size(f:File) = memory.size(f)
+      def close() = memory.close()
+      def discover(pool:java.util.concurrent.ForkJoinPool, found:jatran.io.Sources.Found) {
+        memory.discover(pool, found)
+        throw new java.io.IOException("lost the share")
+      }
+    }
+    val sink = new MemorySink()
+    
+    val failed = try {
+      new Jatran().transform(failing, sink, false, 4)
+      false
+    } catch {
+      case e:java.io.IOException => true
+    }
+    val written = sink.files().size()
+    Thread.sleep(200)
+    
+    assert(failed)
+    assert(written == sink.files().size(), "no worker writes once transform has returned")
+  }
+  
+  @Test def readAheadTranslatesLikeReadingInTurn {
+    val sources = new MemorySources()
+    val big = new StringBuilder("package ahead;\n\nclass Big {\n")
+    for (i <- List.range(0, 3000))
+      big.append("  String s" + i + " = \"\u00e9t\u00e9 " + i + "\";\n")
+    big.append("}\n")
+    sources.put("ahead/Small.java", "package ahead;\n\nclass Small { }\n")
+    sources.put("ahead/Big.java", big.toString)
+    sources.put("ahead/Last.java", "package ahead;\n\nclass Last { int i; }\n")
+    
+    for (depth <- List(0, 1, 3)) {
+      val report = new MetricsReport()
+      val jatran = new Jatran()
+      jatran.encoding = java.nio.charset.Charset.forName("UTF-8")
+      jatran.metrics = report
+      jatran.readAhead = depth
+      jatran.readAheadBytes = 1
+      val sink = new MemorySink()
+      
+      val results = jatran.transform(sources, sink, false, 1)
+      
+      assert(results.forall(!_.failed), "depth " + depth)
+      assert(Arrays.equals(translate(big.toString).getBytes(), sink.get("ahead/Big.scala")), "depth " + depth)
+      if (0 == depth)
+        assert(3 == report.getStalls(), "every source is read in turn")
+    }
+  }
+  
+  @Test def sourcesOfferedAgainAreReadOnce {
+    val memory = new MemorySources()
+    for (i <- List.range(0, 20))
+      memory.put("s/S" + i + ".java", "class S" + i + " { }\n")
+    val reads = new java.util.concurrent.ConcurrentHashMap[File, java.util.concurrent.atomic.AtomicInteger]()
+    val counting = new jatran.io.Sources {
+      def list() = memory.list()
+      def size(f:File) = memory.size(f)
+      def close() = memory.close()
+      def discover(pool:java.util.concurrent.ForkJoinPool, found:jatran.io.Sources.Found) = memory.discover(pool, found)
+      def read(f:File) = {
+        reads.putIfAbsent(f, new java.util.concurrent.atomic.AtomicInteger())
+        reads.get(f).incrementAndGet()
+        memory.read(f)
+      }
+    }
+    
+    val files = memory.list()
+    val input = new jatran.io.ReadAhead(counting, java.nio.charset.Charset.forName("UTF-8"), 4, 1L << 20)
+    try {
+      for (i <- List.range(0, files.size()))
+        input.offer(files.get(i))
+      for (i <- List.range(0, files.size()).reverse)
+        input.offer(files.get(i))
+      for (i <- List.range(0, files.size()).reverse)
+        input.release(input.take(files.get(i)))
+    } finally {
+      input.close()
+    }
+    
+    for (i <- List.range(0, files.size()))
+      assert(1 == reads.get(files.get(i)).get(), files.get(i) + " read once")
+  }
+  
+  @Test def schedulerAdmitsTheLargestThatFit {
+    val scheduler = new Scheduler(100 * Scheduler.COST_PER_BYTE, false)
+    for ((name, size) <- List(("a", 10), ("b", 300), ("c", 50), ("d", 40)))
+      scheduler.add(new File(name), size)
+    var order:List[String] = Nil
+    scheduler.end(new jatran.io.Sources.Found {
+      def found(f:File) { order = f.getName() :: order }
+    })
+    assert(List("b", "c", "d", "a") == order.reverse)
+    
+    assert("b" == scheduler.admit().getName(), "too big to fit, but alone")
+    scheduler.finished(new File("b"))
+    assert("c" == scheduler.admit().getName())
+    assert("d" == scheduler.admit().getName())
+    assert("a" == scheduler.admit().getName())
+    assert(null == scheduler.admit())
+    assert(300 * Scheduler.COST_PER_BYTE == scheduler.peak())
+  }
+  
+  @Test def aTightHeapBudgetStillTranslatesEverySource {
+    val jatran = new Jatran()
+    jatran.heapBudget = 1
+    val results = jatran.transform(new File("src/stub"), tmp("budget"), false, 3)
+    
+    assert(results.length > 0 && results.forall(!_.failed))
+    for (r <- results) {
+      val name = r.source.getName().replace(".java", ".scala")
+      assert(0 == new FileDiff(stub/name, new File(tmp("budget/jatran/stub"))/name, false).diffs.size(), name + " differs")
+    }
+  }
+  
+  @Test def aServerRunsTheCommandLinesOfClients {
+    val daemon = new File(tmp("served/daemon"))
+    daemon.getParentFile().mkdirs()
+    System.setProperty(Client.DAEMON_PROPERTY, daemon.getPath())
+    val server = new Server(daemon)
+    val serving = new Thread(new Runnable {
+      def run() {
+        server.serve()
+      }
+    })
+    serving.start()
+    try {
+      while (!daemon.isFile())
+        Thread.sleep(10)
+      if (Files.getFileStore(daemon.toPath()).supportsFileAttributeView("posix"))
+        assert(PosixFilePermissions.fromString("rw-------") == Files.getPosixFilePermissions(daemon.toPath(), new Array[LinkOption](0)),
+               "only the owner may read the token")
+    
+      val out = new ByteArrayOutputStream()
+      val err = new ByteArrayOutputStream()
+      val ok = Client.send(Client.RUN, Array("-i", "src/stub", "-o", tmp("served/out")), new PrintStream(out), new PrintStream(err))
+      assert(Client.OK == ok, err.toString())
+      for (f <- stub.listFiles(); if f.getName().endsWith(".scala"))
+        assert(new File(tmp("served/out/jatran/stub/") + f.getName()).isFile, f.getName())
+    
+      val published = new Array[Int](2)
+      val publishing = List.range(0, 2).map(i => new Thread(new Runnable {
+        def run() {
+          published(i) = Client.send(Client.RUN, Array("-j", "-t", "2", "-i", "src/stub", "-o", tmp("served/jmx") + i), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err))
+        }
+      }))
+      publishing.foreach(_.start())
+      publishing.foreach(_.join())
+      assert(published.forall(Client.OK == _), err.toString())
+      val names = ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("jatran:*"), null)
+      assert(names.isEmpty(), "reports are taken back once their runs end: " + names)
+    
+      val recovered = new File(tmp("served/recovered"))
+      recovered.mkdirs()
+      write(new File(recovered, "Recovered.java"), "import java.util.List\n\nclass Recovered { }\n")
+      err.reset()
+      val fine = Client.send(Client.RUN, Array("-i", recovered.getPath(), "-o", tmp("served/out")), new PrintStream(out), new PrintStream(err))
+      assert(Client.OK == fine && err.toString().contains("Recovered.java:"), "the client hears of the errors the parser recovered from: " + err)
+    
+      val bad = Client.send(Client.RUN, Array("-i", tmp("served/missing.zip")), new PrintStream(out), new PrintStream(err))
+      assert(Client.NOT_RUN == bad && err.toString().contains("missing.zip"), err.toString())
+    
+      assert(Client.OK == Client.send(Client.STOP, new Array[String](0), new PrintStream(out), new PrintStream(err)))
+      serving.join()
+      assert(!daemon.exists(), "a stopped server takes back its announcement")
+    } finally {
+      server.stop()
+      serving.join()
+      System.clearProperty(Client.DAEMON_PROPERTY)
+    }
+  }
+  
+  @Test def watchingKeepsTheOutputInSync {
+    val src = new File(tmp("watch/src"))
+    new File(src, "w").mkdirs()
+    write(new File(src, "w/Kept.java"), "package w;\n\npublic class Kept { }\n")
+    write(new File(src, "w/Gone.java"), "package w;\n\npublic class Gone { }\n")
+    val out = new File(tmp("watch/out/w"))
+    
+    val log = new ByteArrayOutputStream()
+    val watching = new Thread(new Runnable {
+      def run() {
+        try {
+          new Jatran().watch(src, tmp("watch/out"), false, 1, new PrintStream(log, true))
+        } catch {
+          case e:InterruptedException => // stopped
+        }
+      }
+    })
+    watching.start()
+    within(10000, "the first run") { new File(out, "Gone.scala").isFile && log.toString().contains("watching") }
+    
+    write(new File(src, "w/Kept.java"), "package w;\n\npublic class Kept { int i; }\n")
+    new File(src, "w/Gone.java").delete()
+    new File(src, "x").mkdirs()
+    write(new File(src, "x/Added.java"), "package x;\n\npublic class Added { }\n")
+    
+    within(10000, "the changes") {
+      !new File(out, "Gone.scala").exists() && new File(tmp("watch/out/x/Added.scala")).isFile &&
+        new String(bytes(new File(out, "Kept.scala"))).contains("var i")
+    }
+    watching.interrupt()
+    watching.join()
+  }
+  
+  @Test def aWatchItCannotKeepIsNotRun {
+    val src = new File(tmp("unwatched/src"))
+    src.mkdirs()
+    write(new File(src, "Some.java"), "class Some { }\n")
+    for (argv <- List(Array("-W"),
+                      Array("-W", "-i", src.getPath(), "-o", tmp("unwatched/out.zip")),
+                      Array("-W", "-i", src.getPath(), "-o", tmp("unwatched/out"), "-m", tmp("unwatched/metrics.csv")))) {
+      val err = new ByteArrayOutputStream()
+      assert(Client.NOT_RUN == Main.run(argv, null, new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)), argv.mkString(" "))
+      assert(argv.length == 1 || err.toString().startsWith("jatran: "), err.toString())
+    }
+    assert(!new File(tmp("unwatched/out.zip")).exists() && !new File(tmp("unwatched/out")).exists())
+  }
+  
+  @AfterClass def removeScratch {
+    remove(scratch)
+  }
+  
+  private def tmp(path:String) = scratch.getPath() + "/" + path
+  
+  private def remove(f:File) {
+    if (f.isDirectory())
+      for (child <- f.listFiles())
+        remove(child)
+    f.delete()
+  }
+  
+  private def within(millis:Long, what:String)(done: => Boolean) {
+    val until = System.currentTimeMillis() + millis
+    while (!done && System.currentTimeMillis() < until)
+      Thread.sleep(20)
+    assert(done, what + " took over " + millis + "ms")
+  }
+  
+  private def bytes(f:File):Array[Byte] = {
+    val content = new Array[Byte](f.length().toInt)
+    val in = new FileInputStream(f)
+    try {
+      var n = 0
+      while (n < content.length)
+        n = n + in.read(content, n, content.length - n)
+    } finally {
+      in.close()
+    }
+    content
+  }
+  
+  private def translate(src:String):String = {
+    val parser = new SourceParser()
+    val root = parser.astFactory().create(SourcePrinter.ROOT_ID, "AST ROOT")
+    root.setFirstChild(parser.parse(new CharArrayInputBuffer(src), "Test.java", false))
+    val w = new StringWriter()
+    new ScalaPrinter().print(root, w)
+    w.toString()
+  }
+  
+  private def write(f:File, s:String) {
+    val w = new FileWriter(f)
+    try { w.write(s) } finally { w.close() }
+  }
+}
@@ -0,0 +1,75 @@
+package jatran.test
+
+import org.testng.annotations._
+
+import org.scalatest.testng.TestNGSuite
+
+import antlr.Token
+
+import jatran.lexing._
+
+class LexerTest extends  TestNGSuite {
+  /** every token the grammar declares as a quoted literal, with its type */
+  val literals = {
+    val names = new JavaRecognizer(new JavaLexer(new CharArrayInputBuffer(""))).getTokenNames()
+    for (t <- List.range(0, names.length); if names(t).matches("\"[a-z]+\""))
+      yield (names(t).substring(1, names(t).length - 1), t)
+  }
+  
+  @Test def everyLiteralLexesAsItsOwnType {
+    assert(52 == literals.length)
+    
+    for ((word, t) <- literals)
+      assert(List(t) == types(word), word)
+  }
+  
+  @Test def nearMissesLexAsIdentifiers {
+    val words = List("bytes", "Byte", "in", "_int", "nul", "classy", "assertion", "enums", "i", "synchronize", "$this", "doo")
+    
+    for (w <- words)
+      assert(List(JavaTokenTypes.IDENT) == types(w), w)
+  }
+  
+  @Test def keywordsAreFoundAmongOtherTokens {
+    assert(List(JavaTokenTypes.LITERAL_return, JavaTokenTypes.IDENT, JavaTokenTypes.SEMI) == types("return returned;"))
+  }
+  
+  @Test def compactTreesMatchCommonTrees {
+    val src = "package a; class A<T> extends B implements C, D { int x = 1, y[] = {2}; void f(T t) { for (;;) g(x + y[0]); } }"
+    val common = new SourceParser(false).parse(new CharArrayInputBuffer(src), "A.java", false)
+    val compact = new SourceParser(true).parse(new CharArrayInputBuffer(src), "A.java", false)
+    
+    assert(compact.getClass() != common.getClass())
+    assert(compact.equalsList(common) && common.equalsList(compact))
+    assert(common.toStringList() == compact.toStringList())
+    assert(compact.getFirstChild() == compact.getFirstChild(), "a node has one view at a time")
+  }
+  
+  @Test def nestedPredicatesAreGuessedOnce {
+    val parser = new SourceParser()
+    def guessed(depth:Int) = {
+      var body = "return 0;"
+      for (i <- List.range(0, depth))
+        body = "Object o" + i + " = new Object() { int g() { " + body + " } }; return 1;"
+      parser.parse(new CharArrayInputBuffer("class N { int f() { " + body + " } }"), "N.java", false)
+      assert(parser.recalledPredicates() > 0)
+      parser.guessedPredicates()
+    }
+
+    val shallow = guessed(8)
+    val deep = guessed(16)
+    assert(deep < 3 * shallow, "guessed " + shallow + " predicates at depth 8 but " + deep + " at 16")
+    assert(shallow == guessed(8), "a reset parser remembers nothing")
+  }
+
+  private def types(s:String):List[Int] = {
+    val lexer = new JavaLexer(new CharArrayInputBuffer(s))
+    var ts:List[Int] = Nil
+    var t = lexer.nextToken()
+    while (t.getType() != Token.EOF_TYPE) {
+      ts = t.getType() :: ts
+      t = lexer.nextToken()
+    }
+    ts.reverse
+  }
+}